@@ -1,6 +1,7 @@
 package com.rose.tetris;
 
 import android.os.Bundle;
+import android.view.View;
 import android.widget.Button;
 import android.widget.TextView;
 
@@ -11,10 +12,18 @@ import com.rose.tetris.models.GameType;
 import com.rose.tetris.presenter.GamePresenter;
 import com.rose.tetris.presenter.GameTurn;
 import com.rose.tetris.views.GameFrame;
+import com.rose.tetris.views.GameSurfaceView;
 import com.rose.tetris.views.GameViewFactory;
 
+import java.io.File;
+
 public class MainActivity extends AppCompatActivity {
     private static final String TAG = "MainActivity";
+    private static final String SNAPSHOT_FILE = "game.snapshot";
+    private static final String SCORE_FILE = "scores.log";
+    private static final String FLIGHT_RECORD_FILE = "flight.rec";
+
+    private GamePresenter mGamePresenter;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -22,28 +31,55 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
 
         GameFrame gameFrame = findViewById(R.id.game_container);
+        GameSurfaceView gameSurfaceView = findViewById(R.id.game_surface);
         TextView gameScoreText = findViewById(R.id.game_score);
         TextView gameStatusText = findViewById(R.id.game_status);
         Button gameCtlBtn = findViewById(R.id.game_ctl_btn);
 
         GamePresenter gamePresenter = new GamePresenter();
-        gamePresenter.setGameModel(GameModelFactory.newGameModel(GameType.TETRIS));
-        gamePresenter.setGameView(GameViewFactory.newGameView(gameFrame, gameScoreText, gameStatusText, gameCtlBtn));
+        mGamePresenter = gamePresenter;
+        gamePresenter.setGameModel(GameModelFactory.newGameModel(GameType.TETRIS,
+                new File(getFilesDir(), SNAPSHOT_FILE), new File(getFilesDir(), SCORE_FILE),
+                new File(getFilesDir(), FLIGHT_RECORD_FILE)));
+        if (getResources().getBoolean(R.bool.use_surface_renderer)) {
+            // The frame stays in the layout, which the other views are placed against.
+            gameFrame.setVisibility(View.INVISIBLE);
+            gamePresenter.setGameView(GameViewFactory.newGameView(gameSurfaceView, gameScoreText, gameStatusText, gameCtlBtn));
+        } else {
+            gameSurfaceView.setVisibility(View.GONE);
+            gamePresenter.setGameView(GameViewFactory.newGameView(gameFrame, gameScoreText, gameStatusText, gameCtlBtn));
+        }
 
         Button upBtn = findViewById(R.id.up_btn);
         Button downBtn = findViewById(R.id.down_btn);
         Button leftBtn = findViewById(R.id.left_btn);
         Button rightBtn = findViewById(R.id.right_btn);
         Button fireBtn = findViewById(R.id.fire_btn);
+        Button undoBtn = findViewById(R.id.undo_btn);
 
         upBtn.setOnClickListener(v -> gamePresenter.turn(GameTurn.UP));
         downBtn.setOnClickListener(v -> gamePresenter.turn(GameTurn.DOWN));
         leftBtn.setOnClickListener(v -> gamePresenter.turn(GameTurn.LEFT));
         rightBtn.setOnClickListener(v -> gamePresenter.turn(GameTurn.RIGHT));
         fireBtn.setOnClickListener(v -> gamePresenter.turn(GameTurn.FIRE));
+        undoBtn.setOnClickListener(v -> gamePresenter.turn(GameTurn.UNDO));
 
         gameCtlBtn.setOnClickListener(v -> gamePresenter.changeStatus());
 
         gamePresenter.init();
     }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mGamePresenter.saveGame();
+        mGamePresenter.dumpFlightRecord();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // A new activity, after a rotation say, makes a new model and restores the saved game.
+        mGamePresenter.release();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,102 @@
+package com.rose.tetris.models;
+
+import com.rose.tetris.engine.TripleBuffer;
+import com.rose.tetris.presenter.Frame;
+import com.rose.tetris.presenter.PointType;
+
+/**
+ * Game-thread side of the frame exchange. It keeps the current grid, the cells changed since
+ * the last publish and the overlay, and on {@link #publish()} brings the back buffer of a
+ * {@link TripleBuffer} up to date. Each buffer remembers which rows changed since it was last
+ * written, so publishing copies only those rows rather than the whole grid.
+ */
+class FrameWriter {
+    private static final int BUFFER_COUNT = 3;
+    // Beyond this many changed cells a frame is published as a full redraw, which keeps the
+    // change lists small on very large boards.
+    private static final int MAX_CHANGED_CELLS = 4096;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final byte[] mCells;
+    private final int[] mChangedCells;
+    private int mChangedCount;
+    private boolean mIsFullRedraw = true;
+    private long mSequence;
+    private final TripleBuffer<Frame> mFrames;
+    private final int[] mStaleTop = new int[BUFFER_COUNT];
+    private final int[] mStaleBottom = new int[BUFFER_COUNT];
+    private final int[] mOverlayCells = new int[Frame.MAX_OVERLAY_CELLS];
+    private final PointType[] mOverlayTypes = new PointType[Frame.MAX_OVERLAY_CELLS];
+    private int mOverlayCount;
+
+    FrameWriter(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mCells = new byte[width * height];
+        int changedCapacity = Math.min(width * height, MAX_CHANGED_CELLS);
+        mChangedCells = new int[changedCapacity];
+        mFrames = new TripleBuffer<>(new Frame(width, height, changedCapacity),
+                new Frame(width, height, changedCapacity), new Frame(width, height, changedCapacity));
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            mStaleTop[i] = 0;
+            mStaleBottom[i] = height - 1;
+        }
+    }
+
+    TripleBuffer<Frame> getFrames() {
+        return mFrames;
+    }
+
+    void setCell(int x, int y, PointType type) {
+        int index = y * mWidth + x;
+        byte cell = (byte) type.ordinal();
+        if (mCells[index] == cell) {
+            return;
+        }
+        mCells[index] = cell;
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            mStaleTop[i] = Math.min(mStaleTop[i], y);
+            mStaleBottom[i] = Math.max(mStaleBottom[i], y);
+        }
+        if (!mIsFullRedraw) {
+            mChangedCells[mChangedCount++] = index;
+            if (mChangedCount == mChangedCells.length) {
+                markFullRedraw();
+            }
+        }
+    }
+
+    void clearOverlay() {
+        mOverlayCount = 0;
+    }
+
+    void addOverlayCell(int x, int y, PointType type) {
+        mOverlayCells[mOverlayCount] = y * mWidth + x;
+        mOverlayTypes[mOverlayCount] = type;
+        mOverlayCount++;
+    }
+
+    void markFullRedraw() {
+        mIsFullRedraw = true;
+        mChangedCount = 0;
+    }
+
+    /**
+     * Writes the current grid and its changes into the back buffer and hands it to the view.
+     */
+    void publish() {
+        int back = mFrames.getBackIndex();
+        Frame frame = mFrames.getBack();
+        if (mStaleTop[back] <= mStaleBottom[back]) {
+            frame.copyRows(mCells, mStaleTop[back], mStaleBottom[back] - mStaleTop[back] + 1);
+            mStaleTop[back] = mHeight;
+            mStaleBottom[back] = -1;
+        }
+        frame.setChanges(mSequence++, mChangedCells, mChangedCount, mIsFullRedraw);
+        frame.setOverlay(mOverlayCells, mOverlayTypes, mOverlayCount);
+        mFrames.publish();
+        mChangedCount = 0;
+        mIsFullRedraw = false;
+    }
+}
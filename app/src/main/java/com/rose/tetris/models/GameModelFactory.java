@@ -1,15 +1,38 @@
 package com.rose.tetris.models;
 
+import com.rose.tetris.engine.TetrisEngine;
 import com.rose.tetris.presenter.GameModel;
 
+import java.io.File;
+
 public class GameModelFactory {
     private GameModelFactory() {
     }
 
     public static GameModel newGameModel(GameType gameType) {
+        return newGameModel(gameType, null, null, null);
+    }
+
+    /**
+     * Creates a game that saves itself to {@code snapshotFile}, logs finished games to
+     * {@code scoreFile} and dumps its flight record to {@code flightRecordFile}, any of which may be
+     * null to not do so.
+     */
+    public static GameModel newGameModel(GameType gameType, File snapshotFile, File scoreFile,
+                                         File flightRecordFile) {
+        return newGameModel(gameType, TetrisEngine.DEFAULT_WIDTH, TetrisEngine.DEFAULT_HEIGHT, snapshotFile,
+                scoreFile, flightRecordFile);
+    }
+
+    /**
+     * Creates a game played on a board of {@code boardWidth} x {@code boardHeight} cells, at least
+     * 4 x 4.
+     */
+    public static GameModel newGameModel(GameType gameType, int boardWidth, int boardHeight, File snapshotFile,
+                                         File scoreFile, File flightRecordFile) {
         switch (gameType) {
             case TETRIS:
-                return new TetrisGameModel();
+                return new TetrisGameModel(boardWidth, boardHeight, snapshotFile, scoreFile, flightRecordFile);
             default:
                 return null;
         }
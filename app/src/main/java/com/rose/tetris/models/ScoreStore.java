@@ -0,0 +1,322 @@
+package com.rose.tetris.models;
+
+import com.rose.tetris.engine.BrickType;
+import com.rose.tetris.presenter.GameSession;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The history of finished games: an append-only log with one fixed-size record per game, and a
+ * small index holding the best games and the totals. The index lives in memory and is saved next
+ * to the log together with how much of the log it covers, so opening the store only reads the
+ * records logged since, however long the history is. Records are never rewritten; one cut short by
+ * the process dying fails its checksum and is dropped the next time the store is loaded.
+ * <p>
+ * {@link #add(GameSession)} updates the index and queues the record, and {@link #flush()} writes
+ * the queued records, from one background thread at a time. Queries never wait for the disk.
+ */
+class ScoreStore {
+    static final int TOP_SIZE = 10;
+    private static final int BRICK_TYPES = BrickType.values().length;
+    // Score, lines, duration, seed, end time, brick counts, then a checksum of all that.
+    static final int RECORD_SIZE = 4 + 4 + 8 + 8 + 8 + BRICK_TYPES * 4 + 4;
+    private static final int INDEX_MAGIC = 0x54534958;
+    private static final int INDEX_VERSION = 1;
+    private static final int INDEX_HEADER_SIZE = 4 * 4 + 4 * 8;
+    private static final int READ_RECORDS = 1024;
+
+    private final File mLogFile;
+    private final SnapshotFile mIndexFile;
+    private final CRC32 mChecksum = new CRC32();
+
+    // Guarded by this.
+    private final ArrayDeque<GameSession> mPending = new ArrayDeque<>();
+    private final GameSession[] mTop = new GameSession[TOP_SIZE];
+    private int mTopCount;
+    private long mSessionCount;
+    private long mTotalLines;
+    private long mTotalDurationMillis;
+    // Bytes of whole records in the log, not counting queued ones.
+    private long mLogLength;
+
+    ScoreStore(File logFile) {
+        mLogFile = logFile;
+        mIndexFile = new SnapshotFile(new File(logFile.getPath() + ".index"));
+    }
+
+    /**
+     * Reads the saved index and the records logged after it, and cuts a torn last record off the
+     * log. Reads the whole log instead if the index is missing or does not match it.
+     */
+    synchronized void load() throws IOException {
+        clearIndex();
+        if (!mLogFile.isFile()) {
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(mLogFile, "rw")) {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            if (!readIndex(size)) {
+                clearIndex();
+            }
+            mLogLength = readRecords(channel, mLogLength, size);
+            if (mLogLength < size) {
+                channel.truncate(mLogLength);
+            }
+        }
+    }
+
+    /**
+     * Adds a finished game to the index and queues it for {@link #flush()}.
+     */
+    synchronized void add(GameSession session) {
+        mPending.add(session);
+        addToIndex(session.getScore(), session.getLines(), session.getDurationMillis(), session);
+    }
+
+    /**
+     * Appends the queued games to the log and saves the index covering them. Games queued while
+     * this runs are left for the next flush, and so are the games this one fails to log.
+     */
+    void flush() throws IOException {
+        List<GameSession> sessions;
+        ByteBuffer records;
+        ByteBuffer index;
+        long logLength;
+        synchronized (this) {
+            if (mPending.isEmpty()) {
+                return;
+            }
+            sessions = new ArrayList<>(mPending);
+            mPending.clear();
+            records = ByteBuffer.allocate(sessions.size() * RECORD_SIZE);
+            for (GameSession session : sessions) {
+                writeRecord(records, session);
+            }
+            records.flip();
+            logLength = mLogLength;
+            // Taken now, as later games are in the index but not in these records.
+            index = writeIndex(logLength + records.remaining());
+        }
+        try (RandomAccessFile file = new RandomAccessFile(mLogFile, "rw")) {
+            FileChannel channel = file.getChannel();
+            // Drops whatever a failed flush left behind, so records stay aligned.
+            channel.truncate(logLength);
+            channel.position(logLength);
+            while (records.hasRemaining()) {
+                channel.write(records);
+            }
+            channel.force(false);
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                for (int i = sessions.size() - 1; i >= 0; i--) {
+                    mPending.addFirst(sessions.get(i));
+                }
+            }
+            throw e;
+        }
+        synchronized (this) {
+            mLogLength = logLength + records.limit();
+        }
+        mIndexFile.write(index);
+    }
+
+    /**
+     * Returns the best games, best first and of equal scores the earlier first, at most
+     * {@link #TOP_SIZE} of them.
+     */
+    synchronized List<GameSession> getTop() {
+        List<GameSession> top = new ArrayList<>(mTopCount);
+        for (int i = 0; i < mTopCount; i++) {
+            top.add(mTop[i]);
+        }
+        return top;
+    }
+
+    synchronized GameSession getBest() {
+        return mTopCount == 0 ? null : mTop[0];
+    }
+
+    synchronized long getSessionCount() {
+        return mSessionCount;
+    }
+
+    synchronized long getTotalLines() {
+        return mTotalLines;
+    }
+
+    synchronized long getTotalDurationMillis() {
+        return mTotalDurationMillis;
+    }
+
+    private void clearIndex() {
+        mTopCount = 0;
+        mSessionCount = 0;
+        mTotalLines = 0;
+        mTotalDurationMillis = 0;
+        mLogLength = 0;
+    }
+
+    /**
+     * Counts a game and keeps it if it makes the top. {@code session} may be null if it does not,
+     * so that reading a long log only creates sessions for the few that do.
+     */
+    private void addToIndex(int score, int lines, long durationMillis, GameSession session) {
+        mSessionCount++;
+        mTotalLines += lines;
+        mTotalDurationMillis += durationMillis;
+        if (!isTop(score)) {
+            return;
+        }
+        int i = mTopCount < TOP_SIZE ? mTopCount++ : TOP_SIZE - 1;
+        for (; i > 0 && mTop[i - 1].getScore() < score; i--) {
+            mTop[i] = mTop[i - 1];
+        }
+        mTop[i] = session;
+    }
+
+    private boolean isTop(int score) {
+        return mTopCount < TOP_SIZE || score > mTop[TOP_SIZE - 1].getScore();
+    }
+
+    /**
+     * Reads the whole records between {@code from} and {@code to} into the index, stopping at the
+     * first one that fails its checksum, and returns where the records it read end.
+     */
+    private long readRecords(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_RECORDS * RECORD_SIZE);
+        long position = from;
+        while (to - position >= RECORD_SIZE) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), (to - position) / RECORD_SIZE * RECORD_SIZE));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            while (buffer.remaining() >= RECORD_SIZE) {
+                int start = buffer.position();
+                if (!isChecksumValid(buffer.array(), start)) {
+                    return position;
+                }
+                int score = buffer.getInt(start);
+                int lines = buffer.getInt(start + 4);
+                long durationMillis = buffer.getLong(start + 8);
+                addToIndex(score, lines, durationMillis, isTop(score) ? readSession(buffer) : null);
+                buffer.position(start + RECORD_SIZE);
+                position += RECORD_SIZE;
+            }
+        }
+        return position;
+    }
+
+    private boolean isChecksumValid(byte[] records, int start) {
+        mChecksum.reset();
+        mChecksum.update(records, start, RECORD_SIZE - 4);
+        return (int) mChecksum.getValue() == ByteBuffer.wrap(records).getInt(start + RECORD_SIZE - 4);
+    }
+
+    private void writeRecord(ByteBuffer buffer, GameSession session) {
+        int start = buffer.position();
+        writeSession(buffer, session);
+        mChecksum.reset();
+        mChecksum.update(buffer.array(), start, RECORD_SIZE - 4);
+        buffer.putInt((int) mChecksum.getValue());
+    }
+
+    private static void writeSession(ByteBuffer buffer, GameSession session) {
+        buffer.putInt(session.getScore())
+                .putInt(session.getLines())
+                .putLong(session.getDurationMillis())
+                .putLong(session.getSeed())
+                .putLong(session.getEndedAtMillis());
+        for (BrickType type : BrickType.values()) {
+            buffer.putInt(session.getBrickCount(type));
+        }
+    }
+
+    private static GameSession readSession(ByteBuffer buffer) {
+        int score = buffer.getInt();
+        int lines = buffer.getInt();
+        long durationMillis = buffer.getLong();
+        long seed = buffer.getLong();
+        long endedAtMillis = buffer.getLong();
+        int[] brickCounts = new int[BRICK_TYPES];
+        for (int i = 0; i < BRICK_TYPES; i++) {
+            brickCounts[i] = buffer.getInt();
+        }
+        return new GameSession(score, lines, durationMillis, seed, endedAtMillis, brickCounts);
+    }
+
+    /**
+     * Writes the index as covering the first {@code logLength} bytes of the log: a header with the
+     * totals, the top games as in records but without checksums, and a checksum of it all.
+     */
+    private ByteBuffer writeIndex(long logLength) {
+        ByteBuffer buffer = ByteBuffer.allocate(INDEX_HEADER_SIZE + mTopCount * (RECORD_SIZE - 4) + 4);
+        buffer.putInt(INDEX_MAGIC)
+                .putInt(INDEX_VERSION)
+                .putLong(logLength)
+                .putLong(mSessionCount)
+                .putLong(mTotalLines)
+                .putLong(mTotalDurationMillis)
+                .putInt(RECORD_SIZE)
+                .putInt(mTopCount);
+        for (int i = 0; i < mTopCount; i++) {
+            writeSession(buffer, mTop[i]);
+        }
+        mChecksum.reset();
+        mChecksum.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) mChecksum.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Replaces the index with the saved one and returns true, or returns false if there is no
+     * saved index that matches a log of {@code logSize} bytes.
+     */
+    private boolean readIndex(long logSize) throws IOException {
+        ByteBuffer buffer = mIndexFile.read();
+        if (buffer == null || buffer.remaining() < INDEX_HEADER_SIZE + 4) {
+            return false;
+        }
+        mChecksum.reset();
+        mChecksum.update(buffer.array(), 0, buffer.limit() - 4);
+        if ((int) mChecksum.getValue() != buffer.getInt(buffer.limit() - 4)) {
+            return false;
+        }
+        try {
+            if (buffer.getInt() != INDEX_MAGIC || buffer.getInt() != INDEX_VERSION) {
+                return false;
+            }
+            long logLength = buffer.getLong();
+            mSessionCount = buffer.getLong();
+            mTotalLines = buffer.getLong();
+            mTotalDurationMillis = buffer.getLong();
+            int recordSize = buffer.getInt();
+            int topCount = buffer.getInt();
+            if (recordSize != RECORD_SIZE || logLength > logSize || logLength % RECORD_SIZE != 0
+                    || topCount < 0 || topCount > TOP_SIZE) {
+                return false;
+            }
+            for (mTopCount = 0; mTopCount < topCount; mTopCount++) {
+                mTop[mTopCount] = readSession(buffer);
+            }
+            mLogLength = logLength;
+            return true;
+        } catch (BufferUnderflowException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.rose.tetris.models;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file holding one snapshot of the game, read and written whole through a {@link FileChannel}.
+ * A write goes to a temporary file first and replaces the snapshot only once it is on disk, so
+ * being killed in the middle of a save leaves the previous snapshot intact.
+ */
+class SnapshotFile {
+    private final File mFile;
+    private final File mTempFile;
+
+    SnapshotFile(File file) {
+        mFile = file;
+        mTempFile = new File(file.getPath() + ".tmp");
+    }
+
+    void write(ByteBuffer snapshot) throws IOException {
+        try (FileOutputStream stream = new FileOutputStream(mTempFile)) {
+            FileChannel channel = stream.getChannel();
+            while (snapshot.hasRemaining()) {
+                channel.write(snapshot);
+            }
+            channel.force(false);
+        }
+        if (!mTempFile.renameTo(mFile)) {
+            throw new IOException("Could not replace " + mFile);
+        }
+    }
+
+    /**
+     * Returns the snapshot, ready to read, or null if there is none.
+     */
+    ByteBuffer read() throws IOException {
+        if (!mFile.isFile()) {
+            return null;
+        }
+        try (FileInputStream stream = new FileInputStream(mFile)) {
+            FileChannel channel = stream.getChannel();
+            ByteBuffer snapshot = ByteBuffer.allocate((int) channel.size());
+            while (snapshot.hasRemaining()) {
+                if (channel.read(snapshot) < 0) {
+                    break;
+                }
+            }
+            snapshot.flip();
+            return snapshot;
+        }
+    }
+
+    void delete() {
+        mFile.delete();
+    }
+}
@@ -3,437 +3,528 @@ package com.rose.tetris.models;
 import android.os.Handler;
 import android.util.Log;
 
+import com.rose.tetris.engine.BrickType;
+import com.rose.tetris.engine.Clock;
+import com.rose.tetris.engine.FlightEvent;
+import com.rose.tetris.engine.FlightRecorder;
+import com.rose.tetris.engine.GameLoop;
+import com.rose.tetris.engine.Input;
+import com.rose.tetris.engine.InputQueue;
+import com.rose.tetris.engine.ReplayRecorder;
+import com.rose.tetris.engine.Scheduler;
+import com.rose.tetris.engine.TetrisEngine;
+import com.rose.tetris.presenter.Frame;
+import com.rose.tetris.presenter.GameEvents;
+import com.rose.tetris.presenter.GameMetrics;
 import com.rose.tetris.presenter.GameModel;
+import com.rose.tetris.presenter.GameSession;
 import com.rose.tetris.presenter.GameTurn;
-import com.rose.tetris.presenter.Point;
 import com.rose.tetris.presenter.PointType;
-import com.rose.tetris.presenter.PresenterCompletableObserver;
 import com.rose.tetris.presenter.PresenterObserver;
 
-import java.util.LinkedList;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Android adapter around {@link TetrisEngine}: runs the engine on a {@link Scheduler}, turns its
+ * board into {@link Frame}s and posts everything the presenter observes to the main thread, one
+ * {@link GameEvents} batch per run of the game loop.
+ */
 class TetrisGameModel implements GameModel {
     private static final String TAG = "TetrisGameModel";
-
-    private static final int GAME_SIZE = 15;
-    private static final int PLAYING_AREA_WIDTH = 10;
-    private static final int PLAYING_AREA_HEIGHT = GAME_SIZE;
-    private static final int UPCOMING_AREA_SIZE = 4;
-
-    private Point[][] mPoints;
-    private Point[][] mPlayingPoints;
-    private Point[][] mUpcomingPoints;
-    private int mScore;
-    private final AtomicBoolean mIsGamePaused = new AtomicBoolean();
-    private final AtomicBoolean mIsTurning = new AtomicBoolean();
-    private final LinkedList<Point> mFallingPoints = new LinkedList<>();
-
-    private PresenterCompletableObserver mGameOverObserver;
-    private PresenterObserver<Integer> mScoreUpdatedObserver;
-
+    private static final int UPCOMING_AREA_SIZE = BrickType.SIZE;
+    private static final long FRAME_NANOS = 1_000_000_000L / FPS;
+    private static final int INPUT_QUEUE_CAPACITY = 64;
+    // Bricks a player can take back.
+    private static final int UNDO_DEPTH = 32;
+    // Events the flight recorder keeps, a few minutes of play.
+    private static final int FLIGHT_RECORD_EVENTS = 1 << 14;
+
+    // The grid is the playing area, a vertical line, then the upcoming bricks one under the other,
+    // as many as fit.
+    private final int mPlayingAreaWidth;
+    private final int mPlayingAreaHeight;
+    private final int mGameWidth;
+    private final int mGameHeight;
+    private final FrameWriter mFrameWriter;
+    private final BrickType[] mPublishedUpcomingBricks;
+    private final Random mSeeds = new Random();
+    private final TetrisEngine mEngine;
+    private final ReplayRecorder mRecorder = new ReplayRecorder();
+    // Snapshots are taken under the model lock and written on their own thread, so saving never
+    // waits for the disk on the calling thread.
+    private final SnapshotFile mSnapshotFile;
+    // Finished games, indexed right away and logged on the saving thread.
+    private final ScoreStore mScoreStore;
+    private final FlightRecorder mFlightRecorder = new FlightRecorder(FLIGHT_RECORD_EVENTS);
+    private final File mFlightRecordFile;
+    private final ExecutorService mSaveExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "GameSaver");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Clock mClock;
+    private final Scheduler mScheduler;
+    private final GameMetrics mMetrics;
+    private final AtomicBoolean mIsGamePaused = new AtomicBoolean(true);
+
+    // Turns are queued by the main thread and applied by the game thread at the start of its next
+    // run, so only the game thread ever mutates the engine while the game is running.
+    private final InputQueue mInputs = new InputQueue(INPUT_QUEUE_CAPACITY);
+    private final InputQueue.Sink mInputSink = this::applyInput;
+    private long mStartedNanos;
+    private boolean mHasAppliedInput;
+
+    private volatile PresenterObserver<GameEvents> mEventsObserver;
     private final Handler mHandler = new Handler();
+    // The batch being filled, under the model lock. Batches that were delivered wait in a free list
+    // pushed by the main thread and popped under the model lock, so a popped head cannot be pushed
+    // back behind the pop's back and a run of the game loop allocates nothing.
+    private EventBatch mEvents;
+    private final AtomicReference<EventBatch> mFreeEvents = new AtomicReference<>();
+
+    private final TetrisEngine.Listener mEngineListener = new TetrisEngine.Listener() {
+        @Override
+        public void onBrickLocked(BrickType type) {
+            mFlightRecorder.record(FlightEvent.LOCK, mEngine.getTick(), type.ordinal(), mEngine.getFallingTop());
+            mEvents.events.addBrickLocked();
+        }
 
-    private enum BrickType {
-        L(0), T(1), CHAIR(2), STICK(3), SQUARE(4);
-        final int value;
+        @Override
+        public void onLinesCleared(int lines, int score) {
+            mMetrics.addLines(lines);
+            mFlightRecorder.record(FlightEvent.CLEAR, mEngine.getTick(), lines, score);
+            mEvents.events.addLinesCleared(lines);
+        }
 
-        BrickType(int value) {
-            this.value = value;
+        @Override
+        public void onBrickSpawned(BrickType type) {
+            mMetrics.addPiece();
+            mFlightRecorder.record(FlightEvent.SPAWN, mEngine.getTick(), type.ordinal(), 0);
+            mEvents.events.addBrickSpawned();
         }
 
-        static BrickType fromValue(int value) {
-            switch (value) {
-                case 1:
-                    return T;
-                case 2:
-                    return CHAIR;
-                case 3:
-                    return STICK;
-                case 4:
-                    return SQUARE;
-                case 0:
-                default:
-                    return L;
+        @Override
+        public void onGameOver() {
+            mFlightRecorder.record(FlightEvent.GAME_OVER, mEngine.getTick(), 0, mEngine.getScore());
+            dumpFlightRecord();
+            addSession();
+            mEvents.events.setGameOver();
+            pauseGame();
+        }
+    };
+
+    /**
+     * A batch posted to the main thread as-is, which goes back to the free list once the presenter
+     * has seen it.
+     */
+    private final class EventBatch implements Runnable {
+        final GameEvents events = new GameEvents();
+        EventBatch mNext;
+        long mPostedTick;
+        long mPostedNanos;
+
+        @Override
+        public void run() {
+            long delay = mClock.nanoTime() - mPostedNanos;
+            mFlightRecorder.record(FlightEvent.POST_DELAY, mPostedTick, 0, delay);
+            if (events.isFrameReady()) {
+                mMetrics.getDrawDelay().record(delay);
             }
+            PresenterObserver<GameEvents> observer = mEventsObserver;
+            if (observer != null) {
+                observer.observe(events);
+            }
+            releaseEvents(this);
         }
+    }
 
-        static BrickType random() {
-            Random random = new Random();
-            return fromValue(random.nextInt(5));
-        }
+    /**
+     * @param snapshotFile     where the game is saved so that it survives the process, or null to
+     *                         not save it
+     * @param scoreFile        where finished games are logged, or null to keep no history
+     * @param flightRecordFile where the recent events are dumped on game over and on
+     *                         {@link #dumpFlightRecord()}, or null to not dump them
+     */
+    TetrisGameModel(int boardWidth, int boardHeight, File snapshotFile, File scoreFile, File flightRecordFile) {
+        this(boardWidth, boardHeight, snapshotFile, scoreFile, flightRecordFile, Clock.SYSTEM, new GameMetrics());
+    }
+
+    private TetrisGameModel(int boardWidth, int boardHeight, File snapshotFile, File scoreFile,
+                            File flightRecordFile, Clock clock, GameMetrics metrics) {
+        this(boardWidth, boardHeight, snapshotFile, scoreFile, flightRecordFile, clock,
+                new GameLoop(clock, metrics.getTickLateness()), metrics);
+    }
+
+    TetrisGameModel(int boardWidth, int boardHeight, File snapshotFile, File scoreFile, File flightRecordFile,
+                    Clock clock, Scheduler scheduler, GameMetrics metrics) {
+        mEngine = new TetrisEngine(boardWidth, boardHeight, mSeeds.nextLong());
+        mSnapshotFile = snapshotFile == null ? null : new SnapshotFile(snapshotFile);
+        mScoreStore = scoreFile == null ? null : new ScoreStore(scoreFile);
+        mFlightRecordFile = flightRecordFile;
+        mPlayingAreaWidth = boardWidth;
+        mPlayingAreaHeight = boardHeight;
+        mGameWidth = boardWidth + 1 + UPCOMING_AREA_SIZE;
+        mGameHeight = Math.max(boardHeight, 1 + UPCOMING_AREA_SIZE);
+        mFrameWriter = new FrameWriter(mGameWidth, mGameHeight);
+        mPublishedUpcomingBricks = new BrickType[Math.min(TetrisEngine.PREVIEW_SIZE,
+                (mGameHeight + 1) / (UPCOMING_AREA_SIZE + 1))];
+        mClock = clock;
+        mScheduler = scheduler;
+        mMetrics = metrics;
+        mEngine.setListener(mEngineListener);
+        // One more lock point than bricks, as taking back the first brick goes back to the start.
+        mEngine.setHistoryCapacity(UNDO_DEPTH + 1);
     }
 
     @Override
     public void init() {
-        mPoints = new Point[GAME_SIZE][GAME_SIZE];
-        for (int i = 0; i < GAME_SIZE; i++) {
-            for (int j = 0; j < GAME_SIZE; j++) {
-                mPoints[i][j] = new Point(j, i);
-            }
-        }
-        mPlayingPoints = new Point[PLAYING_AREA_HEIGHT][PLAYING_AREA_WIDTH];
-        for (int i = 0; i < PLAYING_AREA_HEIGHT; i++) {
-            System.arraycopy(mPoints[i], 0, mPlayingPoints[i], 0, PLAYING_AREA_WIDTH);
+        for (int i = 0; i < mPlayingAreaHeight; i++) {
+            mFrameWriter.setCell(mPlayingAreaWidth, i, PointType.VERTICAL_LINE);
         }
-        mUpcomingPoints = new Point[UPCOMING_AREA_SIZE][UPCOMING_AREA_SIZE];
-        for (int i = 0; i < UPCOMING_AREA_SIZE; i++) {
-            for (int j = 0; j < UPCOMING_AREA_SIZE; j++) {
-                mUpcomingPoints[i][j] = mPoints[1 + i][PLAYING_AREA_WIDTH + 1 + j];
+        if (mScoreStore != null) {
+            try {
+                mScoreStore.load();
+            } catch (IOException e) {
+                Log.w(TAG, "Could not load the scores", e);
             }
         }
-        for (int i = 0; i < PLAYING_AREA_HEIGHT; i++) {
-            mPoints[i][PLAYING_AREA_WIDTH].type = PointType.VERTICAL_LINE;
-        }
         newGame();
     }
 
     @Override
-    public int getGameSize() {
-        return GAME_SIZE;
+    public int getGameWidth() {
+        return mGameWidth;
     }
 
     @Override
-    public void newGame() {
-        mScore = 0;
-        for (int i = 0; i < PLAYING_AREA_HEIGHT; i++) {
-            for (int j = 0; j < PLAYING_AREA_WIDTH; j++) {
-                mPlayingPoints[i][j].type = PointType.EMPTY;
-            }
-        }
-        mFallingPoints.clear();
-        generateUpcomingBrick();
+    public int getGameHeight() {
+        return mGameHeight;
     }
 
-    private void generateUpcomingBrick() {
-        BrickType upcomingBrick = BrickType.random();
-        for (int i = 0; i < UPCOMING_AREA_SIZE; i++) {
-            for (int j = 0; j < UPCOMING_AREA_SIZE; j++) {
-                mUpcomingPoints[i][j].type = PointType.EMPTY;
-            }
+    /**
+     * Starts collecting the events of a run into a batch, unless a batch is being filled already.
+     */
+    private void beginEvents() {
+        if (mEvents != null) {
+            return;
         }
-        switch (upcomingBrick) {
-            case L:
-                mUpcomingPoints[1][1].type = PointType.BOX;
-                mUpcomingPoints[2][1].type = PointType.BOX;
-                mUpcomingPoints[3][1].type = PointType.BOX;
-                mUpcomingPoints[3][2].type = PointType.BOX;
-                break;
-            case T:
-                mUpcomingPoints[1][1].type = PointType.BOX;
-                mUpcomingPoints[2][1].type = PointType.BOX;
-                mUpcomingPoints[3][1].type = PointType.BOX;
-                mUpcomingPoints[2][2].type = PointType.BOX;
-                break;
-            case CHAIR:
-                mUpcomingPoints[1][1].type = PointType.BOX;
-                mUpcomingPoints[2][1].type = PointType.BOX;
-                mUpcomingPoints[2][2].type = PointType.BOX;
-                mUpcomingPoints[3][2].type = PointType.BOX;
-                break;
-            case STICK:
-                mUpcomingPoints[0][1].type = PointType.BOX;
-                mUpcomingPoints[1][1].type = PointType.BOX;
-                mUpcomingPoints[2][1].type = PointType.BOX;
-                mUpcomingPoints[3][1].type = PointType.BOX;
-                break;
-            case SQUARE:
-                mUpcomingPoints[1][1].type = PointType.BOX;
-                mUpcomingPoints[1][2].type = PointType.BOX;
-                mUpcomingPoints[2][1].type = PointType.BOX;
-                mUpcomingPoints[2][2].type = PointType.BOX;
+        EventBatch batch;
+        do {
+            batch = mFreeEvents.get();
+            if (batch == null) {
+                batch = new EventBatch();
                 break;
+            }
+        } while (!mFreeEvents.compareAndSet(batch, batch.mNext));
+        batch.mNext = null;
+        batch.events.reset(mEngine.getScore());
+        mEvents = batch;
+    }
+
+    /**
+     * Posts the batch being filled in one message, or returns it to the free list if nothing
+     * happened.
+     */
+    private void postEvents() {
+        EventBatch batch = mEvents;
+        mEvents = null;
+        batch.events.setScore(mEngine.getScore());
+        if (batch.events.isEmpty()) {
+            releaseEvents(batch);
+            return;
         }
+        batch.mPostedTick = mEngine.getTick();
+        batch.mPostedNanos = mClock.nanoTime();
+        mHandler.post(batch);
+    }
 
+    private void releaseEvents(EventBatch batch) {
+        EventBatch head;
+        do {
+            head = mFreeEvents.get();
+            batch.mNext = head;
+        } while (!mFreeEvents.compareAndSet(head, batch));
     }
 
     @Override
-    public void startGame(PresenterObserver<Point[][]> onGameDrawnListener) {
-        mIsGamePaused.set(false);
-        final long sleepTime = 1000 / FPS;
-        new Thread(() -> {
-            long count = 0;
-            while (!mIsGamePaused.get()) {
-                try {
-                    Thread.sleep(sleepTime);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-                if (count % SPEED == 0) {
-                    if (mIsTurning.get()) {
-                        continue;
-                    }
-                    next();
-                    mHandler.post(() -> onGameDrawnListener.observe(mPoints));
-                }
-                count++;
+    public synchronized void newGame() {
+        beginEvents();
+        mEngine.newGame(mSeeds.nextLong());
+        mRecorder.start(mEngine);
+        mFlightRecorder.record(FlightEvent.NEW_GAME, 0, 0, mEngine.getSeed());
+        publishFrame();
+        postEvents();
+    }
+
+    @Override
+    public synchronized void saveGame() {
+        if (mSnapshotFile == null) {
+            return;
+        }
+        if (mEngine.isGameOver() || mEngine.getTick() == 0) {
+            mSaveExecutor.execute(mSnapshotFile::delete);
+            return;
+        }
+        ByteBuffer snapshot = ByteBuffer.allocate(mEngine.getStateSize() + mRecorder.getStateSize());
+        mEngine.writeState(snapshot);
+        mRecorder.writeState(snapshot);
+        snapshot.flip();
+        mSaveExecutor.execute(() -> {
+            try {
+                mSnapshotFile.write(snapshot);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not save the game", e);
             }
-        }).start();
+        });
     }
 
-    private synchronized void next() {
-        updateFallingPoints();
+    @Override
+    public synchronized boolean restoreGame() {
+        if (mSnapshotFile == null) {
+            return false;
+        }
+        beginEvents();
+        try {
+            ByteBuffer snapshot = mSnapshotFile.read();
+            if (snapshot == null) {
+                postEvents();
+                return false;
+            }
+            mEngine.readState(snapshot);
+            mRecorder.readState(snapshot);
+            mFlightRecorder.record(FlightEvent.NEW_GAME, mEngine.getTick(), 1, mEngine.getSeed());
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Could not restore the game", e);
+            newGame();
+            return false;
+        }
+        publishFrame();
+        postEvents();
+        return !mEngine.isGameOver();
+    }
 
-        if (isNextMerged()) {
-            if (isOutSide()) {
-                if (mGameOverObserver != null) {
-                    mHandler.post(mGameOverObserver::onNext);
-                }
-                mIsGamePaused.set(true);
-                return;
+    /**
+     * Writes the rows the engine reports as dirty and the upcoming bricks into the frame writer,
+     * the falling brick and its ghost into the overlay, and publishes the result with the events
+     * of this run.
+     */
+    private void publishFrame() {
+        if (mEngine.isFullyDirty()) {
+            mFrameWriter.markFullRedraw();
+            writeRows(0, mPlayingAreaHeight - 1);
+        } else {
+            writeRows(mEngine.getDirtyTop(), mEngine.getDirtyBottom());
+        }
+        mEngine.clearDirty();
+        mFrameWriter.clearOverlay();
+        addOverlayCells(mEngine.getGhostTop(), PointType.GHOST, true);
+        addOverlayCells(mEngine.getFallingTop(), PointType.BOX, false);
+
+        for (int k = 0; k < mPublishedUpcomingBricks.length; k++) {
+            BrickType upcomingBrick = mEngine.getUpcomingBrick(k);
+            if (upcomingBrick == mPublishedUpcomingBricks[k]) {
+                continue;
             }
-            int y = mFallingPoints.stream().mapToInt(p -> p.y).max().orElse(-1);
-            while (y >= 0) {
-                boolean isScored = true;
-                for (int i = 0; i < PLAYING_AREA_WIDTH; i++) {
-                    Point point = getPlayingPoint(i, y);
-                    if (point.type == PointType.EMPTY) {
-                        isScored = false;
-                        break;
-                    }
-                }
-                if (isScored) {
-                    mScore++;
-                    if (mScoreUpdatedObserver != null) {
-                        mHandler.post(() -> mScoreUpdatedObserver.observe(mScore));
-                    }
-                    LinkedList<Point> tmPoints = new LinkedList<>();
-                    for (int i = 0; i <= y; i++) {
-                        for (int j = 0; j < PLAYING_AREA_WIDTH; j++) {
-                            Point point = getPlayingPoint(j, i);
-                            if (point.type == PointType.BOX) {
-                                point.type = PointType.EMPTY;
-                                if (i != y) {
-                                    tmPoints.add(new Point(point.x, point.y + 1, PointType.BOX, false));
-                                }
-
-                            }
-                        }
-                    }
-                    tmPoints.forEach(this::updatePlayingPoint);
-                } else {
-                    y--;
+            int top = 1 + k * (UPCOMING_AREA_SIZE + 1);
+            for (int i = 0; i < UPCOMING_AREA_SIZE; i++) {
+                long shapeRow = upcomingBrick.getShapeRow(i);
+                for (int j = 0; j < UPCOMING_AREA_SIZE; j++) {
+                    PointType type = (shapeRow & (1L << j)) != 0 ? PointType.BOX : PointType.EMPTY;
+                    mFrameWriter.setCell(mPlayingAreaWidth + 1 + j, top + i, type);
                 }
             }
-            mFallingPoints.forEach(p -> p.isFallingPoint = false);
-            mFallingPoints.clear();
-        } else {
-            LinkedList<Point> tmPoints = new LinkedList<>();
-            for (Point fallingPoint : mFallingPoints) {
-                fallingPoint.type = PointType.EMPTY;
-                fallingPoint.isFallingPoint = false;
-                tmPoints.add(new Point(fallingPoint.x, fallingPoint.y + 1, PointType.BOX, true));
-            }
-            mFallingPoints.clear();
-            mFallingPoints.addAll(tmPoints);
-            mFallingPoints.forEach(this::updatePlayingPoint);
+            mPublishedUpcomingBricks[k] = upcomingBrick;
         }
-
+        mFrameWriter.publish();
+        mEvents.events.setFrameReady(mFrameWriter.getFrames());
     }
 
-    private boolean isNextMerged() {
-        for (Point fallingPoint : mFallingPoints) {
-            if (fallingPoint.y + 1 >= 0 && (fallingPoint.y == PLAYING_AREA_HEIGHT - 1 ||
-                    getPlayingPoint(fallingPoint.x, fallingPoint.y + 1).isStablePoint())) {
-                return true;
+    private void writeRows(int top, int bottom) {
+        int wordCount = mEngine.getWordCount();
+        for (int i = Math.max(top, 0); i <= Math.min(bottom, mPlayingAreaHeight - 1); i++) {
+            for (int word = 0; word < wordCount; word++) {
+                long row = mEngine.getRow(i, word);
+                int left = word << 6;
+                int columns = Math.min(64, mPlayingAreaWidth - left);
+                for (int j = 0; j < columns; j++) {
+                    PointType type = (row & (1L << j)) != 0 ? PointType.BOX : PointType.EMPTY;
+                    mFrameWriter.setCell(left + j, i, type);
+                }
             }
         }
-        return false;
     }
 
-    private boolean isOutSide() {
-        for (Point fallingPoint : mFallingPoints) {
-            if (fallingPoint.y < 0) {
-                return true;
+    private void addOverlayCells(int top, PointType type, boolean isGhost) {
+        int wordCount = mEngine.getWordCount();
+        for (int i = Math.max(top, 0); i < Math.min(top + BrickType.SIZE, mPlayingAreaHeight); i++) {
+            for (int word = 0; word < wordCount; word++) {
+                long cells = isGhost ? mEngine.getGhostRow(i, word) : mEngine.getFallingRow(i, word);
+                for (; cells != 0; cells &= cells - 1) {
+                    mFrameWriter.addOverlayCell((word << 6) + Long.numberOfTrailingZeros(cells), i, type);
+                }
             }
         }
-        return false;
     }
 
-    private void updatePlayingPoint(Point point) {
-        if (point.x >= 0 && point.x < PLAYING_AREA_WIDTH &&
-                point.y >= 0 && point.y < PLAYING_AREA_HEIGHT) {
-            mPoints[point.y][point.x] = point;
-            mPlayingPoints[point.y][point.x] = point;
-        }
+    @Override
+    public void startGame() {
+        mStartedNanos = mClock.nanoTime();
+        mIsGamePaused.set(false);
+        mScheduler.start(FRAME_NANOS, steps -> {
+            long start = mClock.nanoTime();
+            advance(steps);
+            mMetrics.getTickDuration().record(mClock.nanoTime() - start);
+            return mEngine.getFramesUntilStep();
+        });
     }
 
-    private Point getPlayingPoint(int x, int y) {
-        if (x >= 0 && y >= 0 && x < PLAYING_AREA_WIDTH && y < PLAYING_AREA_HEIGHT) {
-            return mPlayingPoints[y][x];
+    /**
+     * Applies the queued turns in order, then the elapsed frames, publishes a frame if either
+     * changed the board and posts what happened as one batch.
+     */
+    private synchronized void advance(int frames) {
+        mFlightRecorder.record(FlightEvent.TICK, mEngine.getTick(), frames, mClock.nanoTime());
+        beginEvents();
+        mHasAppliedInput = false;
+        mInputs.drain(mInputSink);
+        boolean isChanged = mHasAppliedInput;
+        if (frames > 0 && !mEngine.isGameOver()) {
+            isChanged |= mEngine.advance(frames);
+        }
+        if (isChanged) {
+            publishFrame();
         }
-        return null;
+        postEvents();
     }
 
-    private void updateFallingPoints() {
-        if (mFallingPoints.isEmpty()) {
-            for (int i = 0; i < UPCOMING_AREA_SIZE; i++) {
-                for (int j = 0; j < UPCOMING_AREA_SIZE; j++) {
-                    if (mUpcomingPoints[i][j].type == PointType.BOX) {
-                        mFallingPoints.add(new Point(j + 3, i - 4, PointType.BOX, true));
-                    }
-                }
-            }
-            generateUpcomingBrick();
+    private void applyInput(Input input, long timestampNanos) {
+        // Turns queued before this game was started belong to a previous game.
+        if (timestampNanos - mStartedNanos < 0 || mEngine.isGameOver()) {
+            return;
+        }
+        long tick = mEngine.getTick();
+        boolean isApplied = mEngine.apply(input);
+        // An undo with nothing to go back to is left out of the replay: a restored game starts its
+        // history over, while the replay still has the lock points from before.
+        if (isApplied || input != Input.UNDO) {
+            mRecorder.record(tick, input);
         }
+        mHasAppliedInput = true;
+        long latency = mClock.nanoTime() - timestampNanos;
+        mFlightRecorder.record(FlightEvent.INPUT, tick, input.ordinal() | (isApplied ? FlightRecorder.ACCEPTED : 0),
+                latency);
+        mMetrics.getInputLatency().record(latency);
     }
 
     @Override
     public void pauseGame() {
         mIsGamePaused.set(true);
+        mScheduler.stop();
+        saveGame();
     }
 
     @Override
     public void turn(GameTurn turn) {
-        if (mIsGamePaused.get() || mIsTurning.get()) {
+        if (mIsGamePaused.get()) {
             return;
         }
-        mIsTurning.set(true);
-        LinkedList<Point> tmPoints;
-        boolean canTurn;
+        Input input;
         switch (turn) {
             case LEFT:
-                updateFallingPoints();
-                canTurn = true;
-                for (Point fallingPoint : mFallingPoints) {
-                    if (fallingPoint.y >= 0 && (fallingPoint.x == 0 ||
-                            getPlayingPoint(fallingPoint.x - 1, fallingPoint.y).isStablePoint())) {
-                        canTurn = false;
-                        break;
-                    }
-                }
-                if (canTurn) {
-                    tmPoints = new LinkedList<>();
-                    for (Point fallingPoint : mFallingPoints) {
-                        tmPoints.add(new Point(fallingPoint.x - 1, fallingPoint.y, PointType.BOX, true));
-                        fallingPoint.type = PointType.EMPTY;
-                        fallingPoint.isFallingPoint = false;
-                    }
-                    mFallingPoints.clear();
-                    mFallingPoints.addAll(tmPoints);
-                    mFallingPoints.forEach(this::updatePlayingPoint);
-                }
+                input = Input.LEFT;
                 break;
             case RIGHT:
-                updateFallingPoints();
-                canTurn = true;
-                for (Point fallingPoint : mFallingPoints) {
-                    if (fallingPoint.y >= 0 && (fallingPoint.x == PLAYING_AREA_WIDTH - 1 ||
-                            getPlayingPoint(fallingPoint.x + 1, fallingPoint.y).isStablePoint())) {
-                        canTurn = false;
-                        break;
-                    }
-                }
-                if (canTurn) {
-                    tmPoints = new LinkedList<>();
-                    for (Point fallingPoint : mFallingPoints) {
-                        tmPoints.add(new Point(fallingPoint.x + 1, fallingPoint.y, PointType.BOX, true));
-                        fallingPoint.type = PointType.EMPTY;
-                        fallingPoint.isFallingPoint = false;
-                    }
-                    mFallingPoints.clear();
-                    mFallingPoints.addAll(tmPoints);
-                    mFallingPoints.forEach(this::updatePlayingPoint);
-                }
+                input = Input.RIGHT;
                 break;
             case DOWN:
-                next();
+                input = Input.SOFT_DROP;
                 break;
             case FIRE:
-                rotateFallingPoints();
+                input = Input.ROTATE;
+                break;
             case UP:
-            default:
+                input = Input.HARD_DROP;
+                break;
+            case UNDO:
+                input = Input.UNDO;
                 break;
+            default:
+                return;
+        }
+        long start = mClock.nanoTime();
+        if (mInputs.offer(input, start)) {
+            mScheduler.wake();
         }
-        mIsTurning.set(false);
+        mMetrics.getTurnDuration().record(mClock.nanoTime() - start);
     }
 
-    private void rotateFallingPoints() {
-        updateFallingPoints();
-        int left = mFallingPoints.stream().mapToInt(p -> p.x).min().orElse(-1);
-        int right = mFallingPoints.stream().mapToInt(p -> p.x).max().orElse(-1);
-        int top = mFallingPoints.stream().mapToInt(p -> p.y).min().orElse(-1);
-        int bottom = mFallingPoints.stream().mapToInt(p -> p.y).max().orElse(-1);
-        int size = Math.max(right - left, bottom - top) + 1;
-        if (rotatePoints(left, top, size)) {
-            return;
-        }
-        if (rotatePoints(right - size + 1, top, size)) {
-            return;
-        }
-        if (rotatePoints(left, bottom - size + 1, size)) {
-            return;
-        }
-        rotatePoints(right - size + 1, bottom - size + 1, size);
+    @Override
+    public void setEventsListener(PresenterObserver<GameEvents> onEventsListener) {
+        mEventsObserver = onEventsListener;
     }
 
-    public boolean rotatePoints(int x, int y, int size) {
-        Log.i(TAG, "rotatePoints: x = " + x + ", y = " + y + ", size = " + size);
-        if (x + size - 1 < 0 || x + size - 1 >= PLAYING_AREA_WIDTH) {
-            return false;
-        }
-        boolean canRotate = true;
-        Point[][] points = new Point[size][size];
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                Point point = getPlayingPoint(j + x, i + y);
-                if (point == null) {
-                    final int tmX = j + x;
-                    final int tmY = i + y;
-                    point = mFallingPoints.stream()
-                            .filter(p -> p.x == tmX && p.y == tmY)
-                            .findFirst()
-                            .orElse(new Point(j + x, i + y));
-                }
-                if (point.isStablePoint() && getPlayingPoint(x + size - 1 - i, y + j).isFallingPoint) {
-                    canRotate = false;
-                    break;
-                }
-                if (point.isFallingPoint) {
-                    Log.i(TAG, "rotatePoints: Falling point: " + point.x + ", " + point.y + "; type: " + point.type);
-                }
-                points[i][j] = new Point(x + size - 1 - i, y + j, point.type, point.isFallingPoint);
-            }
-            if (!canRotate) {
-                break;
-            }
-        }
-        for (Point point: mFallingPoints) {
-            Log.i(TAG, "rotatePoints: Falling point 2: " + point.x + ", " + point.y + ", type = " + point.type);
+    private void addSession() {
+        if (mScoreStore == null) {
+            return;
         }
-        if (!canRotate) {
-            return false;
+        int[] brickCounts = new int[BrickType.values().length];
+        for (BrickType type : BrickType.values()) {
+            brickCounts[type.ordinal()] = mEngine.getBrickCount(type);
         }
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                Point point = getPlayingPoint(i + y, j + x);
-                if (point == null) {
-                    continue;
-                }
-                point.type = PointType.EMPTY;
+        mScoreStore.add(new GameSession(mEngine.getScore(), mEngine.getLines(), mEngine.getTick() * 1000 / FPS,
+                mEngine.getSeed(), System.currentTimeMillis(), brickCounts));
+        mSaveExecutor.execute(() -> {
+            try {
+                mScoreStore.flush();
+            } catch (IOException e) {
+                Log.w(TAG, "Could not log the game", e);
             }
+        });
+    }
+
+    @Override
+    public List<GameSession> getHighScores() {
+        return mScoreStore == null ? Collections.emptyList() : mScoreStore.getTop();
+    }
+
+    @Override
+    public void dumpFlightRecord() {
+        if (mFlightRecordFile == null) {
+            return;
         }
-        mFallingPoints.clear();
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                updatePlayingPoint(points[i][j]);
-                if (points[i][j].isFallingPoint) {
-                    mFallingPoints.add(points[i][j]);
-                }
+        mSaveExecutor.execute(() -> {
+            try {
+                mFlightRecorder.dump(mFlightRecordFile);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not dump the flight record", e);
             }
-        }
-        Log.i(TAG, "rotatePoints: falling points size = " + mFallingPoints.size());
-        return true;
+        });
+    }
+
+    @Override
+    public void release() {
+        mIsGamePaused.set(true);
+        mScheduler.release();
+        // Saves already queued, such as the one on pause, still finish.
+        mSaveExecutor.shutdown();
     }
 
     @Override
-    public void setGameOverListener(PresenterCompletableObserver onGameOverListener) {
-        mGameOverObserver = onGameOverListener;
+    public synchronized byte[] getReplay() {
+        return mRecorder.toByteArray(mEngine.getTick());
     }
 
     @Override
-    public void setScoreUpdatedListener(PresenterObserver<Integer> onScoreUpdatedListener) {
-        mScoreUpdatedObserver = onScoreUpdatedListener;
+    public GameMetrics getMetrics() {
+        return mMetrics;
     }
 }
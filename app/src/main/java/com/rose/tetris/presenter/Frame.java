@@ -0,0 +1,123 @@
+package com.rose.tetris.presenter;
+
+/**
+ * Snapshot of the game grid handed from the model to the view, in two layers. The grid holds what
+ * only changes when a brick settles: the settled boxes, the border and the upcoming bricks, one
+ * byte per cell being the ordinal of its {@link PointType}. Next to the cells a frame lists the
+ * cells that changed since the frame with the previous sequence number, so a view that drew that
+ * frame only has to repaint those. The falling brick and its ghost are not in the grid but in a
+ * short overlay list, drawn on top of the grid every frame.
+ * <p>
+ * Frames are exchanged through a {@link com.rose.tetris.engine.TripleBuffer}: the model only
+ * writes frames the view does not hold, and the view never writes at all.
+ */
+public class Frame {
+    // A falling brick and its ghost, four cells each.
+    public static final int MAX_OVERLAY_CELLS = 8;
+    private static final PointType[] TYPES = PointType.values();
+
+    private final int mWidth;
+    private final int mHeight;
+    private final byte[] mCells;
+    private final int[] mChangedCells;
+    private int mChangedCount;
+    private final int[] mOverlayCells = new int[MAX_OVERLAY_CELLS];
+    private final PointType[] mOverlayTypes = new PointType[MAX_OVERLAY_CELLS];
+    private int mOverlayCount;
+    private boolean mIsFullRedraw = true;
+    private long mSequence = -1;
+
+    /**
+     * @param changedCapacity most changed cells a frame can list; a model that changes more
+     *                        publishes a full redraw instead
+     */
+    public Frame(int width, int height, int changedCapacity) {
+        mWidth = width;
+        mHeight = height;
+        mCells = new byte[width * height];
+        mChangedCells = new int[changedCapacity];
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public long getSequence() {
+        return mSequence;
+    }
+
+    public PointType getType(int x, int y) {
+        return TYPES[mCells[y * mWidth + x]];
+    }
+
+    /**
+     * Returns true if the view has to repaint every cell, whatever frame it drew before.
+     */
+    public boolean isFullRedraw() {
+        return mIsFullRedraw;
+    }
+
+    public int getChangedCount() {
+        return mChangedCount;
+    }
+
+    public int getChangedX(int i) {
+        return mChangedCells[i] % mWidth;
+    }
+
+    public int getChangedY(int i) {
+        return mChangedCells[i] / mWidth;
+    }
+
+    /**
+     * Returns how many overlay cells there are. Later ones are drawn over earlier ones.
+     */
+    public int getOverlayCount() {
+        return mOverlayCount;
+    }
+
+    public int getOverlayX(int i) {
+        return mOverlayCells[i] % mWidth;
+    }
+
+    public int getOverlayY(int i) {
+        return mOverlayCells[i] / mWidth;
+    }
+
+    public PointType getOverlayType(int i) {
+        return mOverlayTypes[i];
+    }
+
+    /**
+     * Model side: copies {@code rows} rows of {@code cells}, a grid laid out like this frame's,
+     * starting at row {@code top}.
+     */
+    public void copyRows(byte[] cells, int top, int rows) {
+        System.arraycopy(cells, top * mWidth, mCells, top * mWidth, rows * mWidth);
+    }
+
+    /**
+     * Model side: sets the sequence number and the changes of this frame. {@code changedCells}
+     * holds cell indices, {@code y * width + x}.
+     */
+    public void setChanges(long sequence, int[] changedCells, int changedCount, boolean isFullRedraw) {
+        mSequence = sequence;
+        mIsFullRedraw = isFullRedraw;
+        mChangedCount = isFullRedraw ? 0 : changedCount;
+        System.arraycopy(changedCells, 0, mChangedCells, 0, mChangedCount);
+    }
+
+    /**
+     * Model side: sets the overlay of this frame, {@code cells} holding cell indices as in
+     * {@link #setChanges(long, int[], int, boolean)}.
+     */
+    public void setOverlay(int[] cells, PointType[] types, int count) {
+        mOverlayCount = count;
+        System.arraycopy(cells, 0, mOverlayCells, 0, count);
+        System.arraycopy(types, 0, mOverlayTypes, 0, count);
+    }
+}
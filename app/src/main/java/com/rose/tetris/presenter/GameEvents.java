@@ -0,0 +1,102 @@
+package com.rose.tetris.presenter;
+
+import com.rose.tetris.engine.TripleBuffer;
+
+/**
+ * Everything that happened in the game during one run of the game loop, handed from the model to
+ * the presenter in a single post. A run that steps several frames or applies several turns still
+ * produces one batch: counts add up, the score is the one at the end of the run and the frame is
+ * the last one published.
+ * <p>
+ * Batches are pooled by the model and reused once the presenter returns, so a presenter reads what
+ * it needs during the call and does not keep the batch.
+ */
+public class GameEvents {
+    private TripleBuffer<Frame> mFrames;
+    private int mLinesCleared;
+    private int mStartScore;
+    private int mScore;
+    private int mBricksLocked;
+    private int mBricksSpawned;
+    private boolean mIsGameOver;
+
+    /**
+     * Returns true if a new frame was published, which {@link #getFrames()} holds.
+     */
+    public boolean isFrameReady() {
+        return mFrames != null;
+    }
+
+    public TripleBuffer<Frame> getFrames() {
+        return mFrames;
+    }
+
+    public int getLinesCleared() {
+        return mLinesCleared;
+    }
+
+    public int getScore() {
+        return mScore;
+    }
+
+    /**
+     * Returns how much the score changed, which is negative when a new game started.
+     */
+    public int getScoreDelta() {
+        return mScore - mStartScore;
+    }
+
+    public int getBricksLocked() {
+        return mBricksLocked;
+    }
+
+    public int getBricksSpawned() {
+        return mBricksSpawned;
+    }
+
+    public boolean isGameOver() {
+        return mIsGameOver;
+    }
+
+    public boolean isEmpty() {
+        return mFrames == null && mLinesCleared == 0 && mScore == mStartScore && mBricksLocked == 0
+                && mBricksSpawned == 0 && !mIsGameOver;
+    }
+
+    /**
+     * Model side: empties the batch for a run that starts at {@code score}.
+     */
+    public void reset(int score) {
+        mFrames = null;
+        mLinesCleared = 0;
+        mStartScore = score;
+        mScore = score;
+        mBricksLocked = 0;
+        mBricksSpawned = 0;
+        mIsGameOver = false;
+    }
+
+    public void setFrameReady(TripleBuffer<Frame> frames) {
+        mFrames = frames;
+    }
+
+    public void addLinesCleared(int lines) {
+        mLinesCleared += lines;
+    }
+
+    public void setScore(int score) {
+        mScore = score;
+    }
+
+    public void addBrickLocked() {
+        mBricksLocked++;
+    }
+
+    public void addBrickSpawned() {
+        mBricksSpawned++;
+    }
+
+    public void setGameOver() {
+        mIsGameOver = true;
+    }
+}
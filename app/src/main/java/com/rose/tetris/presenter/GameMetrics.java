@@ -0,0 +1,102 @@
+package com.rose.tetris.presenter;
+
+import com.rose.tetris.engine.Histogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Performance counters of a running game, cheap enough to stay on in release builds. Durations are
+ * in nanoseconds. The model records the game loop side, the view the drawing side.
+ */
+public final class GameMetrics {
+    private final Histogram mTickDuration = new Histogram();
+    private final Histogram mTickLateness = new Histogram();
+    private final Histogram mTurnDuration = new Histogram();
+    private final Histogram mInputLatency = new Histogram();
+    private final Histogram mDrawDelay = new Histogram();
+    private final Histogram mOnDrawDuration = new Histogram();
+    private final AtomicLong mLines = new AtomicLong();
+    private final AtomicLong mPieces = new AtomicLong();
+
+    /**
+     * Time one run of the game loop takes: applying queued turns, advancing the engine and
+     * publishing the frame.
+     */
+    public Histogram getTickDuration() {
+        return mTickDuration;
+    }
+
+    /**
+     * How much later than scheduled the game loop woke up for a tick.
+     */
+    public Histogram getTickLateness() {
+        return mTickLateness;
+    }
+
+    /**
+     * Time {@link GameModel#turn(GameTurn)} blocks the main thread.
+     */
+    public Histogram getTurnDuration() {
+        return mTurnDuration;
+    }
+
+    /**
+     * Time from a turn being made until the game loop applies it.
+     */
+    public Histogram getInputLatency() {
+        return mInputLatency;
+    }
+
+    /**
+     * Time from the model posting a frame to the main thread until the view is asked to draw it.
+     */
+    public Histogram getDrawDelay() {
+        return mDrawDelay;
+    }
+
+    /**
+     * Time the view spends in onDraw.
+     */
+    public Histogram getOnDrawDuration() {
+        return mOnDrawDuration;
+    }
+
+    public void addLines(int lines) {
+        mLines.addAndGet(lines);
+    }
+
+    public long getLines() {
+        return mLines.get();
+    }
+
+    public void addPiece() {
+        mPieces.incrementAndGet();
+    }
+
+    public long getPieces() {
+        return mPieces.get();
+    }
+
+    public void reset() {
+        mTickDuration.reset();
+        mTickLateness.reset();
+        mTurnDuration.reset();
+        mInputLatency.reset();
+        mDrawDelay.reset();
+        mOnDrawDuration.reset();
+        mLines.set(0);
+        mPieces.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "tick: " + mTickDuration
+                + "\ntickLateness: " + mTickLateness
+                + "\nturn: " + mTurnDuration
+                + "\ninputLatency: " + mInputLatency
+                + "\ndrawDelay: " + mDrawDelay
+                + "\nonDraw: " + mOnDrawDuration
+                + "\nlines: " + getLines()
+                + "\npieces: " + getPieces();
+    }
+}
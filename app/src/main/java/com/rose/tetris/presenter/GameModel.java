@@ -1,15 +1,58 @@
 package com.rose.tetris.presenter;
 
+import java.util.List;
+
 public interface GameModel {
     int FPS = 60;
-    int SPEED = 25;
     void init();
-    int getGameSize();
+    int getGameWidth();
+    int getGameHeight();
     void newGame();
-    void startGame(PresenterObserver<Point[][]> onGameDrawnListener);
+    void startGame();
     void pauseGame();
+
+    /**
+     * Saves the game in the background so that {@link #restoreGame()} can pick it up in a later
+     * process. A finished or not yet started game removes the saved one.
+     */
+    void saveGame();
+
+    /**
+     * Replaces the current game with the saved one, if there is one that is not over, and returns
+     * whether it did.
+     */
+    boolean restoreGame();
     void turn(GameTurn turn);
-    void setGameOverListener(PresenterCompletableObserver onGameOverListener);
-    void setScoreUpdatedListener(PresenterObserver<Integer> onScoreUpdatedListener);
+
+    /**
+     * Sets who sees what happens in the game, on the main thread, one {@link GameEvents} batch per
+     * run of the game loop.
+     */
+    void setEventsListener(PresenterObserver<GameEvents> onEventsListener);
+    GameMetrics getMetrics();
+
+    /**
+     * Returns the best finished games, best first, a finished game being in there by the time its
+     * game over is observed.
+     */
+    List<GameSession> getHighScores();
+
+    /**
+     * Returns the current game as a replay that {@link com.rose.tetris.engine.ReplayPlayer} can
+     * play back, for attaching to bug reports.
+     */
+    byte[] getReplay();
+
+    /**
+     * Writes the last few thousand events of the game to a file in the background, for attaching
+     * to bug reports along with the replay. A game over does this by itself.
+     */
+    void dumpFlightRecord();
+
+    /**
+     * Stops the game for good and lets the threads of the model end, for when the screen that
+     * shows it goes away. Nothing else may be called afterwards.
+     */
+    void release();
 
 }
@@ -1,5 +1,7 @@
 package com.rose.tetris.presenter;
 
+import java.util.List;
+
 public class GamePresenter {
     private GameModel mGameModel;
     private GameView mGameView;
@@ -15,10 +17,31 @@ public class GamePresenter {
 
     public void init() {
         mGameModel.init();
-        mGameView.init(mGameModel.getGameSize());
-        mGameModel.setGameOverListener(() -> setStatus(GameStatus.OVER));
-        mGameModel.setScoreUpdatedListener(mGameView::setScore);
-        setStatus(GameStatus.START);
+        mGameView.init(mGameModel.getGameWidth(), mGameModel.getGameHeight());
+        mGameView.setMetrics(mGameModel.getMetrics());
+        mGameModel.setEventsListener(this::onGameEvents);
+        showBestScore();
+        setStatus(mGameModel.restoreGame() ? GameStatus.PAUSED : GameStatus.START);
+    }
+
+    /**
+     * Pauses a running game and saves it, for when the app goes to the background.
+     */
+    public void saveGame() {
+        if (mStatus == GameStatus.PLAYING) {
+            pauseGame();
+        } else {
+            mGameModel.saveGame();
+        }
+    }
+
+    public void dumpFlightRecord() {
+        mGameModel.dumpFlightRecord();
+    }
+
+    public void release() {
+        mGameModel.setEventsListener(null);
+        mGameModel.release();
     }
 
     public void turn(GameTurn turn) {
@@ -40,7 +63,25 @@ public class GamePresenter {
 
     private void startGame() {
         setStatus(GameStatus.PLAYING);
-        mGameModel.startGame(mGameView::draw);
+        mGameModel.startGame();
+    }
+
+    private void onGameEvents(GameEvents events) {
+        if (events.isFrameReady()) {
+            mGameView.draw(events.getFrames());
+        }
+        if (events.getScoreDelta() != 0) {
+            mGameView.setScore(events.getScore());
+        }
+        if (events.isGameOver()) {
+            showBestScore();
+            setStatus(GameStatus.OVER);
+        }
+    }
+
+    private void showBestScore() {
+        List<GameSession> highScores = mGameModel.getHighScores();
+        mGameView.setBestScore(highScores.isEmpty() ? 0 : highScores.get(0).getScore());
     }
 
     private void setStatus(GameStatus status) {
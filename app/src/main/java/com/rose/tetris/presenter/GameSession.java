@@ -0,0 +1,60 @@
+package com.rose.tetris.presenter;
+
+import com.rose.tetris.engine.BrickType;
+
+/**
+ * A finished game as kept in the score history.
+ */
+public class GameSession {
+    private final int mScore;
+    private final int mLines;
+    private final long mDurationMillis;
+    private final long mSeed;
+    private final long mEndedAtMillis;
+    private final int[] mBrickCounts;
+
+    /**
+     * @param durationMillis game time, which does not count pauses
+     * @param brickCounts    bricks spawned by {@link BrickType} ordinal
+     */
+    public GameSession(int score, int lines, long durationMillis, long seed, long endedAtMillis, int[] brickCounts) {
+        mScore = score;
+        mLines = lines;
+        mDurationMillis = durationMillis;
+        mSeed = seed;
+        mEndedAtMillis = endedAtMillis;
+        mBrickCounts = brickCounts.clone();
+    }
+
+    public int getScore() {
+        return mScore;
+    }
+
+    public int getLines() {
+        return mLines;
+    }
+
+    public long getDurationMillis() {
+        return mDurationMillis;
+    }
+
+    public long getSeed() {
+        return mSeed;
+    }
+
+    public long getEndedAtMillis() {
+        return mEndedAtMillis;
+    }
+
+    public int getBrickCount(BrickType type) {
+        return mBrickCounts[type.ordinal()];
+    }
+
+    public int getBrickCount() {
+        int count = 0;
+        for (int brickCount : mBrickCounts) {
+            count += brickCount;
+        }
+        return count;
+    }
+}
@@ -1,5 +1,5 @@
 package com.rose.tetris.presenter;
 
 public enum GameTurn {
-    LEFT, RIGHT, UP, DOWN, FIRE
+    LEFT, RIGHT, UP, DOWN, FIRE, UNDO
 }
@@ -1,8 +1,12 @@
 package com.rose.tetris.presenter;
 
+import com.rose.tetris.engine.TripleBuffer;
+
 public interface GameView {
-    void init(int gameSize);
-    void draw(Point[][] points);
+    void init(int gameWidth, int gameHeight);
+    void draw(TripleBuffer<Frame> frames);
     void setScore(int score);
+    void setBestScore(int bestScore);
     void setStatus(GameStatus status);
+    void setMetrics(GameMetrics metrics);
 }
@@ -1,5 +1,5 @@
 package com.rose.tetris.presenter;
 
 public enum PointType {
-    EMPTY, BOX, VERTICAL_LINE, HORIZONTAL_LINE
+    EMPTY, BOX, VERTICAL_LINE, HORIZONTAL_LINE, GHOST
 }
@@ -0,0 +1,145 @@
+package com.rose.tetris.views;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import com.rose.tetris.presenter.Frame;
+import com.rose.tetris.presenter.PointType;
+
+/**
+ * Paints {@link Frame}s in two layers. The grid, which only changes when a brick settles, is
+ * painted into an offscreen bitmap, and only the cells that changed since the frame drawn before;
+ * the whole grid is repainted when a frame asks for it, for example on new games, and when frames
+ * were skipped in between. {@link #draw(Canvas, Frame)} copies that bitmap and paints the few
+ * overlay cells of the falling brick and its ghost on top.
+ * <p>
+ * A renderer is used from one thread at a time.
+ */
+class FrameRenderer {
+    private final int mGameWidth;
+    private final int mGameHeight;
+    private int mBoxSize;
+    private int mBoxPadding;
+    private long mDrawnSequence = -1;
+
+    private final Paint mPaint = new Paint();
+    private Bitmap mBoardBitmap;
+    private final Canvas mBoardCanvas = new Canvas();
+
+    FrameRenderer(int gameWidth, int gameHeight) {
+        mGameWidth = gameWidth;
+        mGameHeight = gameHeight;
+    }
+
+    /**
+     * Fits the grid into {@code width} x {@code height} pixels. Returns false if the size of a cell
+     * stays the same, in which case the cached grid is kept.
+     */
+    boolean setSize(int width, int height) {
+        int boxSize = Math.min(width / mGameWidth, height / mGameHeight);
+        if (boxSize == mBoxSize && mBoardBitmap != null) {
+            return false;
+        }
+        release();
+        mBoxSize = boxSize;
+        mBoxPadding = mBoxSize / 10;
+        if (mBoxSize > 0) {
+            mBoardBitmap = Bitmap.createBitmap(mBoxSize * mGameWidth, mBoxSize * mGameHeight, Bitmap.Config.ARGB_8888);
+            mBoardCanvas.setBitmap(mBoardBitmap);
+        }
+        return true;
+    }
+
+    void release() {
+        if (mBoardBitmap != null) {
+            mBoardBitmap.recycle();
+            mBoardBitmap = null;
+        }
+        mDrawnSequence = -1;
+    }
+
+    /**
+     * Returns true if {@code frame} follows the frame drawn last, so that only its changed cells
+     * need repainting.
+     */
+    private boolean isIncremental(Frame frame) {
+        return !frame.isFullRedraw() && mDrawnSequence >= 0 && frame.getSequence() == mDrawnSequence + 1;
+    }
+
+    boolean isDrawn(Frame frame) {
+        return frame.getSequence() == mDrawnSequence;
+    }
+
+    /**
+     * Clears the whole of {@code canvas}, whose contents may be anything, and paints {@code frame}.
+     */
+    void draw(Canvas canvas, Frame frame) {
+        canvas.drawColor(Color.BLACK);
+        if (frame == null || mBoardBitmap == null) {
+            return;
+        }
+        if (frame.getSequence() != mDrawnSequence) {
+            if (isIncremental(frame)) {
+                for (int i = 0; i < frame.getChangedCount(); i++) {
+                    drawPoint(mBoardCanvas, frame, frame.getChangedX(i), frame.getChangedY(i));
+                }
+            } else {
+                mBoardBitmap.eraseColor(Color.BLACK);
+                for (int i = 0; i < mGameWidth; i++) {
+                    for (int j = 0; j < mGameHeight; j++) {
+                        drawPoint(mBoardCanvas, frame, i, j);
+                    }
+                }
+            }
+            mDrawnSequence = frame.getSequence();
+        }
+        canvas.drawBitmap(mBoardBitmap, 0, 0, null);
+        for (int i = 0; i < frame.getOverlayCount(); i++) {
+            drawBox(canvas, frame.getOverlayType(i), frame.getOverlayX(i), frame.getOverlayY(i));
+        }
+    }
+
+    private void drawPoint(Canvas canvas, Frame frame, int x, int y) {
+        mPaint.setColor(Color.BLACK);
+        canvas.drawRect(mBoxSize * x, mBoxSize * y, mBoxSize * (x + 1), mBoxSize * (y + 1), mPaint);
+        drawBox(canvas, frame.getType(x, y), x, y);
+    }
+
+    private void drawBox(Canvas canvas, PointType type, int x, int y) {
+        int left, right, top, bottom;
+        mPaint.setColor(Color.WHITE);
+        switch (type) {
+            case BOX:
+                left = mBoxSize * x + mBoxPadding;
+                right = left + mBoxSize - mBoxPadding;
+                top = mBoxSize * y + mBoxPadding;
+                bottom = top + mBoxSize - mBoxPadding;
+                break;
+            case VERTICAL_LINE:
+                left = mBoxSize * x;
+                right = left + mBoxPadding;
+                top = mBoxSize * y;
+                bottom = top + mBoxSize;
+                break;
+            case HORIZONTAL_LINE:
+                left = mBoxSize * y;
+                right = left + mBoxSize;
+                top = mBoxSize * y;
+                bottom = top + mBoxPadding;
+                break;
+            case GHOST:
+                mPaint.setColor(Color.DKGRAY);
+                left = mBoxSize * x + mBoxPadding;
+                right = left + mBoxSize - mBoxPadding;
+                top = mBoxSize * y + mBoxPadding;
+                bottom = top + mBoxSize - mBoxPadding;
+                break;
+            case EMPTY:
+            default:
+                return;
+        }
+        canvas.drawRect(left, top, right, bottom, mPaint);
+    }
+}
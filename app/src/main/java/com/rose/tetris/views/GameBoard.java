@@ -0,0 +1,19 @@
+package com.rose.tetris.views;
+
+import com.rose.tetris.engine.TripleBuffer;
+import com.rose.tetris.presenter.Frame;
+import com.rose.tetris.presenter.GameMetrics;
+
+/**
+ * The view that shows the game grid, called on the main thread.
+ */
+interface GameBoard {
+    void init(int gameWidth, int gameHeight);
+
+    /**
+     * Called with the frame exchange whenever the model published a frame.
+     */
+    void setFrames(TripleBuffer<Frame> frames);
+
+    void setMetrics(GameMetrics metrics);
+}
@@ -2,18 +2,22 @@ package com.rose.tetris.views;
 
 import android.content.Context;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
-import android.os.Handler;
 import android.util.AttributeSet;
 import android.view.View;
 
 import androidx.annotation.Nullable;
 
-import com.rose.tetris.presenter.GameStatus;
-import com.rose.tetris.presenter.Point;
+import com.rose.tetris.engine.TripleBuffer;
+import com.rose.tetris.presenter.Frame;
+import com.rose.tetris.presenter.GameMetrics;
 
-public class GameFrame extends View {
+/**
+ * Draws the game from the {@link Frame}s the model publishes on the main thread, through a
+ * {@link FrameRenderer}, which repaints only the cells that changed into its cached grid. The
+ * view itself is invalidated whole: with hardware acceleration a dirty rectangle is ignored and
+ * the view is redrawn anyway.
+ */
+public class GameFrame extends View implements GameBoard {
     public GameFrame(Context context) {
         super(context);
     }
@@ -26,72 +30,44 @@ public class GameFrame extends View {
         super(context, attrs, defStyleAttr);
     }
 
-    private Point[][] mPoints;
-    private int mBoxSize;
-    private int mBoxPadding;
-    private int mGameSize;
+    private Frame mFrame;
+    private FrameRenderer mRenderer;
+    private GameMetrics mMetrics;
 
-    private final Paint mPaint = new Paint();
-
-    public void init(int gameSize) {
-        mGameSize = gameSize;
+    @Override
+    public void init(int gameWidth, int gameHeight) {
+        mRenderer = new FrameRenderer(gameWidth, gameHeight);
         getViewTreeObserver().addOnGlobalLayoutListener(() -> {
-            mBoxSize = Math.min(getWidth(), getHeight()) / mGameSize;
-            mBoxPadding = mBoxSize / 10;
+            if (mRenderer.setSize(getWidth(), getHeight())) {
+                invalidate();
+            }
         });
     }
 
-    void setPoints(Point[][] points) {
-        mPoints = points;
+    @Override
+    public void setMetrics(GameMetrics metrics) {
+        mMetrics = metrics;
     }
 
-    private Point getPoint(int x, int y) {
-        return mPoints[y][x];
+    @Override
+    public void setFrames(TripleBuffer<Frame> frames) {
+        Frame frame = frames.acquire();
+        if (frame == mFrame && mRenderer.isDrawn(frame)) {
+            return;
+        }
+        mFrame = frame;
+        invalidate();
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
+        long start = System.nanoTime();
         super.onDraw(canvas);
-        mPaint.setColor(Color.BLACK);
-        canvas.drawRect(0, 0, mGameSize, mGameSize, mPaint);
-        if (mPoints == null) {
-            return;
+        if (mRenderer != null) {
+            mRenderer.draw(canvas, mFrame);
         }
-        for (int i = 0; i < mGameSize; i++) {
-            for (int j = 0; j < mGameSize; j++) {
-                Point point = getPoint(i, j);
-                int left, right, top, bottom;
-                mPaint.setColor(Color.WHITE);
-                switch (point.type) {
-                    case BOX:
-                        left = mBoxSize * point.x + mBoxPadding;
-                        right = left + mBoxSize - mBoxPadding;
-                        top = mBoxSize * point.y + mBoxPadding;
-                        bottom = top + mBoxSize - mBoxPadding;
-                        break;
-                    case VERTICAL_LINE:
-                        left = mBoxSize * point.x;
-                        right = left + mBoxPadding;
-                        top = mBoxSize * point.y;
-                        bottom = top + mBoxSize;
-                        break;
-                    case HORIZONTAL_LINE:
-                        left = mBoxSize * point.y;
-                        right = left + mBoxSize;
-                        top = mBoxSize * point.y;
-                        bottom = top + mBoxPadding;
-                        break;
-                    case EMPTY:
-                    default:
-                        left = mBoxSize * point.x;
-                        right = left + mBoxSize;
-                        top = mBoxSize * point.y;
-                        bottom = top + mBoxSize;
-                        mPaint.setColor(Color.BLACK);
-                        break;
-                }
-                canvas.drawRect(left, top, right, bottom, mPaint);
-            }
+        if (mMetrics != null) {
+            mMetrics.getOnDrawDuration().record(System.nanoTime() - start);
         }
     }
 }
@@ -0,0 +1,156 @@
+package com.rose.tetris.views;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import androidx.annotation.Nullable;
+
+import com.rose.tetris.engine.TripleBuffer;
+import com.rose.tetris.presenter.Frame;
+import com.rose.tetris.presenter.GameMetrics;
+
+/**
+ * Draws the game on its own render thread, so that layout passes and other work on the main
+ * thread cannot delay or drop game frames. While the surface exists the render thread wakes on
+ * the vsync after each frame the model publishes through {@link Choreographer}, takes the latest
+ * frame straight from the {@link TripleBuffer} and, if it is new, draws it with a
+ * {@link FrameRenderer}. The main thread only tells it that a frame was published, so nothing
+ * runs while the game is paused.
+ */
+public class GameSurfaceView extends SurfaceView implements GameBoard, SurfaceHolder.Callback,
+        Choreographer.FrameCallback {
+    public GameSurfaceView(Context context) {
+        super(context);
+    }
+
+    public GameSurfaceView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public GameSurfaceView(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+    }
+
+    private volatile TripleBuffer<Frame> mFrames;
+    private volatile GameMetrics mMetrics;
+
+    // Owned by the render thread while it runs.
+    private FrameRenderer mRenderer;
+    private SurfaceHolder mSurfaceHolder;
+    private long mDrawnSequence = -1;
+    private boolean mIsFramePending;
+    private final Runnable mRequestFrame = this::requestFrame;
+
+    private HandlerThread mRenderThread;
+    private Handler mRenderHandler;
+
+    @Override
+    public void init(int gameWidth, int gameHeight) {
+        mRenderer = new FrameRenderer(gameWidth, gameHeight);
+        getHolder().addCallback(this);
+    }
+
+    @Override
+    public void setMetrics(GameMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    @Override
+    public void setFrames(TripleBuffer<Frame> frames) {
+        // The render thread is the only consumer of the buffer, so it is not acquired here.
+        mFrames = frames;
+        if (mRenderHandler != null) {
+            mRenderHandler.post(mRequestFrame);
+        }
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        mRenderThread = new HandlerThread("GameRender", Process.THREAD_PRIORITY_DISPLAY);
+        mRenderThread.start();
+        mRenderHandler = new Handler(mRenderThread.getLooper());
+        mRenderHandler.post(() -> {
+            mSurfaceHolder = holder;
+            requestFrame();
+        });
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        mRenderHandler.post(() -> {
+            mRenderer.setSize(width, height);
+            mDrawnSequence = -1;
+            requestFrame();
+        });
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        // The surface goes away when this returns, so the render thread has to be done with it.
+        mRenderHandler.post(() -> {
+            Choreographer.getInstance().removeFrameCallback(this);
+            mIsFramePending = false;
+            mSurfaceHolder = null;
+            mRenderer.release();
+        });
+        mRenderThread.quitSafely();
+        try {
+            mRenderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mRenderThread = null;
+        mRenderHandler = null;
+    }
+
+    /**
+     * Draws on the next vsync, on the render thread.
+     */
+    private void requestFrame() {
+        if (mSurfaceHolder != null && !mIsFramePending) {
+            mIsFramePending = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mIsFramePending = false;
+        if (mSurfaceHolder == null) {
+            return;
+        }
+        TripleBuffer<Frame> frames = mFrames;
+        if (frames == null) {
+            return;
+        }
+        Frame frame = frames.acquire();
+        if (frame.getSequence() == mDrawnSequence) {
+            return;
+        }
+        long start = System.nanoTime();
+        Canvas canvas = mSurfaceHolder.lockCanvas();
+        if (canvas == null) {
+            // Tries again on the next vsync rather than leave the frame undrawn while paused.
+            requestFrame();
+            return;
+        }
+        try {
+            // What a locked canvas holds is undefined, so the renderer clears all of it first.
+            mRenderer.draw(canvas, frame);
+            mDrawnSequence = frame.getSequence();
+        } finally {
+            mSurfaceHolder.unlockCanvasAndPost(canvas);
+        }
+        GameMetrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.getOnDrawDuration().record(System.nanoTime() - start);
+        }
+    }
+}
@@ -9,7 +9,17 @@ public class GameViewFactory {
     private GameViewFactory() {
     }
 
+    /**
+     * Creates a view that draws the game on the main thread.
+     */
     public static GameView newGameView(GameFrame gameFrame, TextView gameScoreText, TextView gameStatusText, Button gameCtlBtn) {
         return new GameViewImpl(gameFrame, gameScoreText, gameStatusText, gameCtlBtn);
     }
+
+    /**
+     * Creates a view that draws the game on its own render thread, paced by vsync.
+     */
+    public static GameView newGameView(GameSurfaceView gameSurfaceView, TextView gameScoreText, TextView gameStatusText, Button gameCtlBtn) {
+        return new GameViewImpl(gameSurfaceView, gameScoreText, gameStatusText, gameCtlBtn);
+    }
 }
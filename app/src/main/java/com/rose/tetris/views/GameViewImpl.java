@@ -4,37 +4,51 @@ import android.view.View;
 import android.widget.Button;
 import android.widget.TextView;
 
+import com.rose.tetris.engine.TripleBuffer;
+import com.rose.tetris.presenter.Frame;
+import com.rose.tetris.presenter.GameMetrics;
 import com.rose.tetris.presenter.GameStatus;
 import com.rose.tetris.presenter.GameView;
-import com.rose.tetris.presenter.Point;
 
 class GameViewImpl implements GameView {
-    private final GameFrame mGameFrame;
+    private final GameBoard mGameBoard;
     private final TextView mGameScoreText;
     private final TextView mGameStatusText;
     private final Button mGameCtlBtn;
+    private int mScore;
+    private int mBestScore;
 
-    GameViewImpl(GameFrame gameFrame, TextView gameScoreText, TextView gameStatusText, Button gameCtlBtn) {
-        mGameFrame = gameFrame;
+    GameViewImpl(GameBoard gameBoard, TextView gameScoreText, TextView gameStatusText, Button gameCtlBtn) {
+        mGameBoard = gameBoard;
         mGameScoreText = gameScoreText;
         mGameStatusText = gameStatusText;
         mGameCtlBtn = gameCtlBtn;
     }
 
     @Override
-    public void init(int gameSize) {
-        mGameFrame.init(gameSize);
+    public void init(int gameWidth, int gameHeight) {
+        mGameBoard.init(gameWidth, gameHeight);
     }
 
     @Override
-    public void draw(Point[][] points) {
-        mGameFrame.setPoints(points);
-        mGameFrame.invalidate();
+    public void draw(TripleBuffer<Frame> frames) {
+        mGameBoard.setFrames(frames);
     }
 
     @Override
     public void setScore(int score) {
-        mGameScoreText.setText("Score: " + score);
+        mScore = score;
+        updateScoreText();
+    }
+
+    @Override
+    public void setBestScore(int bestScore) {
+        mBestScore = bestScore;
+        updateScoreText();
+    }
+
+    private void updateScoreText() {
+        mGameScoreText.setText("Score: " + mScore + "   Best: " + mBestScore);
     }
 
     @Override
@@ -43,4 +57,9 @@ class GameViewImpl implements GameView {
         mGameStatusText.setVisibility(status == GameStatus.PLAYING ? View.INVISIBLE : View.VISIBLE);
         mGameCtlBtn.setText(status == GameStatus.PLAYING ? "Pause" : "Start");
     }
+
+    @Override
+    public void setMetrics(GameMetrics metrics) {
+        mGameBoard.setMetrics(metrics);
+    }
 }
@@ -0,0 +1,122 @@
+package com.rose.tetris.models;
+
+import com.rose.tetris.presenter.GameSession;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ScoreStoreTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void load_findsTopOfEverySessionLogged() throws IOException {
+        File logFile = mFolder.newFile("scores.log");
+        Random random = new Random(3);
+        List<Integer> scores = new ArrayList<>();
+        ScoreStore store = new ScoreStore(logFile);
+        store.load();
+        for (int i = 0; i < 2_000; i++) {
+            int score = random.nextInt(100_000);
+            scores.add(score);
+            store.add(newSession(score, i));
+            if (random.nextInt(50) == 0) {
+                store.flush();
+            }
+        }
+        store.flush();
+        scores.sort((a, b) -> b - a);
+
+        ScoreStore loaded = new ScoreStore(logFile);
+        loaded.load();
+        assertTop(scores, loaded);
+        assertEquals(scores.size(), loaded.getSessionCount());
+
+        // Without the index the whole log is read.
+        new File(logFile.getPath() + ".index").delete();
+        loaded = new ScoreStore(logFile);
+        loaded.load();
+        assertTop(scores, loaded);
+        assertEquals(scores.size(), loaded.getSessionCount());
+    }
+
+    @Test
+    public void load_dropsTornRecordAndKeepsAppending() throws IOException {
+        File logFile = mFolder.newFile("scores.log");
+        ScoreStore store = new ScoreStore(logFile);
+        store.load();
+        store.add(newSession(100, 0));
+        store.add(newSession(300, 1));
+        store.flush();
+        store.add(newSession(500, 2));
+        store.flush();
+        // Killed halfway through logging a record, after the index was saved.
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+            file.setLength(file.length() - ScoreStore.RECORD_SIZE / 2);
+        }
+
+        store = new ScoreStore(logFile);
+        store.load();
+        assertEquals(2, store.getSessionCount());
+        assertEquals(300, store.getBest().getScore());
+        assertEquals(2L * ScoreStore.RECORD_SIZE, logFile.length());
+
+        store.add(newSession(200, 3));
+        store.flush();
+        store = new ScoreStore(logFile);
+        store.load();
+        assertEquals(3, store.getSessionCount());
+        assertEquals(300, store.getTop().get(0).getScore());
+        assertEquals(200, store.getTop().get(1).getScore());
+        assertEquals(3, store.getTop().get(1).getSeed());
+    }
+
+    @Test
+    public void flush_keepsGamesItFailsToLog() throws IOException {
+        File logFile = new File(mFolder.getRoot(), "scores.log");
+        ScoreStore store = new ScoreStore(logFile);
+        store.load();
+        store.add(newSession(100, 0));
+        store.add(newSession(300, 1));
+        // A directory in the way of the log makes opening it fail.
+        assertTrue(logFile.mkdir());
+        try {
+            store.flush();
+            fail("Logged into a directory");
+        } catch (IOException expected) {
+        }
+        assertTrue(logFile.delete());
+        store.add(newSession(200, 2));
+        store.flush();
+
+        store = new ScoreStore(logFile);
+        store.load();
+        assertEquals(3, store.getSessionCount());
+        assertEquals(3L * ScoreStore.RECORD_SIZE, logFile.length());
+        assertEquals(300, store.getTop().get(0).getScore());
+        assertEquals(200, store.getTop().get(1).getScore());
+        assertEquals(100, store.getTop().get(2).getScore());
+    }
+
+    private static void assertTop(List<Integer> sortedScores, ScoreStore store) {
+        List<GameSession> top = store.getTop();
+        assertEquals(ScoreStore.TOP_SIZE, top.size());
+        for (int i = 0; i < top.size(); i++) {
+            assertEquals((int) sortedScores.get(i), top.get(i).getScore());
+        }
+    }
+
+    private static GameSession newSession(int score, long seed) {
+        return new GameSession(score, score / 100, 60_000, seed, 1_000 + seed, new int[]{1, 2, 3, 4, 5, 6, 7});
+    }
+}
@@ -0,0 +1,93 @@
+package com.rose.tetris.engine;
+
+/**
+ * Board setups the benchmarks run against. Each one builds three engines sharing the same settled
+ * boxes: one with a brick in mid-air, one with the brick resting on the stack so that the next
+ * step locks it, and one with nothing falling so that the next step spawns a brick.
+ */
+public enum BoardState {
+    EMPTY(BrickType.T, 3) {
+        @Override
+        long row(int y, long fullRow) {
+            return 0;
+        }
+    },
+    HALF_FULL(BrickType.T, 3) {
+        @Override
+        long row(int y, long fullRow) {
+            return y < TetrisEngine.DEFAULT_HEIGHT / 2 ? 0 : withHoles(y, fullRow);
+        }
+    },
+    NEAR_TOP_OUT(BrickType.T, 3) {
+        @Override
+        long row(int y, long fullRow) {
+            return y < 2 ? 0 : withHoles(y, fullRow);
+        }
+    },
+    // Four full rows with a one-column well that the falling stick completes.
+    MULTI_LINE_CLEAR(BrickType.STICK, 3) {
+        @Override
+        long row(int y, long fullRow) {
+            long well = 1L << 4;
+            if (y >= TetrisEngine.DEFAULT_HEIGHT - 4) {
+                return fullRow & ~well;
+            }
+            return y < TetrisEngine.DEFAULT_HEIGHT / 2 ? 0 : withHoles(y, fullRow) & ~well;
+        }
+    };
+
+    static final long SEED = 42;
+    private static final int MID_AIR_TOP = 4;
+
+    private final BrickType mBrickType;
+    private final int mBrickX;
+
+    BoardState(BrickType brickType, int brickX) {
+        mBrickType = brickType;
+        mBrickX = brickX;
+    }
+
+    abstract long row(int y, long fullRow);
+
+    // Two holes per row so that no row is full before the brick lands.
+    private static long withHoles(int y, long fullRow) {
+        return fullRow & ~(1L << (y * 3 % TetrisEngine.DEFAULT_WIDTH)) & ~(1L << ((y * 7 + 2) % TetrisEngine.DEFAULT_WIDTH));
+    }
+
+    TetrisEngine newSpawning() {
+        TetrisEngine engine = new TetrisEngine(SEED);
+        BitBoard board = engine.getBoard();
+        for (int y = 0; y < board.getHeight(); y++) {
+            board.setRow(y, 0, row(y, board.getFullWord(0)));
+        }
+        return engine;
+    }
+
+    TetrisEngine newFalling() {
+        TetrisEngine engine = newSpawning();
+        engine.placeFallingBrick(mBrickType, mBrickX, Math.min(MID_AIR_TOP, getLandingTop(engine) - 1));
+        return engine;
+    }
+
+    TetrisEngine newLanded() {
+        TetrisEngine engine = newSpawning();
+        engine.placeFallingBrick(mBrickType, mBrickX, getLandingTop(engine));
+        return engine;
+    }
+
+    BrickType getBrickType() {
+        return mBrickType;
+    }
+
+    int getBrickX() {
+        return mBrickX;
+    }
+
+    private int getLandingTop(TetrisEngine engine) {
+        int top = -BrickType.SIZE;
+        while (!engine.getBoard().collides(mBrickType.shape, mBrickX, top + 1)) {
+            top++;
+        }
+        return top;
+    }
+}
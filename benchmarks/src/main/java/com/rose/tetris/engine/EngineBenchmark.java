@@ -0,0 +1,93 @@
+package com.rose.tetris.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot paths of {@link TetrisEngine}. Every operation first restores the engine from a template
+ * with {@link TetrisEngine#copyFrom(TetrisEngine)} so that each call sees the same board; the cost
+ * of that copy alone is measured by {@link #restoreOnly()}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EngineBenchmark {
+    @Param({"EMPTY", "HALF_FULL", "NEAR_TOP_OUT", "MULTI_LINE_CLEAR"})
+    public BoardState boardState;
+
+    private TetrisEngine mFalling;
+    private TetrisEngine mLanded;
+    private TetrisEngine mSpawning;
+    private final TetrisEngine mEngine = new TetrisEngine(BoardState.SEED);
+
+    @Setup
+    public void setUp() {
+        mFalling = boardState.newFalling();
+        mLanded = boardState.newLanded();
+        mSpawning = boardState.newSpawning();
+    }
+
+    @Benchmark
+    public TetrisEngine restoreOnly() {
+        mEngine.copyFrom(mFalling);
+        return mEngine;
+    }
+
+    @Benchmark
+    public TetrisEngine gravityStep() {
+        mEngine.copyFrom(mFalling);
+        mEngine.step();
+        return mEngine;
+    }
+
+    @Benchmark
+    public TetrisEngine lockAndClear() {
+        mEngine.copyFrom(mLanded);
+        mEngine.step();
+        return mEngine;
+    }
+
+    @Benchmark
+    public boolean moveLeft() {
+        mEngine.copyFrom(mFalling);
+        return mEngine.apply(Input.LEFT);
+    }
+
+    @Benchmark
+    public boolean moveRight() {
+        mEngine.copyFrom(mFalling);
+        return mEngine.apply(Input.RIGHT);
+    }
+
+    @Benchmark
+    public boolean rotate() {
+        mEngine.copyFrom(mFalling);
+        return mEngine.apply(Input.ROTATE);
+    }
+
+    @Benchmark
+    public TetrisEngine spawn() {
+        mEngine.copyFrom(mSpawning);
+        mEngine.updateFallingPoints();
+        return mEngine;
+    }
+
+    @Benchmark
+    public BrickType takeUpcomingBrick() {
+        return mEngine.takeUpcomingBrick();
+    }
+}
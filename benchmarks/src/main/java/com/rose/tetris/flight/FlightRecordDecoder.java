@@ -0,0 +1,118 @@
+package com.rose.tetris.flight;
+
+import com.rose.tetris.engine.BrickType;
+import com.rose.tetris.engine.FlightEvent;
+import com.rose.tetris.engine.FlightRecordReader;
+import com.rose.tetris.engine.FlightRecorder;
+import com.rose.tetris.engine.Input;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Prints a flight record pulled off a device, one event per line, then what stands out in it: the
+ * longest gap between two runs of the game loop, which is where a freeze shows, and the longest
+ * wait of an input and of a post to the main thread.
+ * <p>
+ * Run with {@code ./gradlew :benchmarks:decodeFlightRecord -PflightArgs="flight.rec"}; add
+ * {@code --tail <events>} to print only the last events. The summary covers all of them.
+ */
+public final class FlightRecordDecoder {
+    private static final BrickType[] BRICK_TYPES = BrickType.values();
+    private static final Input[] INPUTS = Input.values();
+
+    private FlightRecordDecoder() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String path = null;
+        int tail = Integer.MAX_VALUE;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--tail") && i + 1 < args.length) {
+                tail = Integer.parseInt(args[++i]);
+            } else {
+                path = args[i];
+            }
+        }
+        if (path == null) {
+            System.err.println("Usage: FlightRecordDecoder [--tail <events>] <flight record>");
+            System.exit(2);
+        }
+        FlightRecordReader reader = new FlightRecordReader(ByteBuffer.wrap(Files.readAllBytes(Paths.get(path))));
+        System.out.printf(Locale.US, "The last %d of %d events%n", reader.getCount(), reader.getTotalCount());
+
+        int skip = Math.max(0, reader.getCount() - tail);
+        long firstTickNanos = 0;
+        long lastTickNanos = 0;
+        long maxTickGap = 0;
+        long maxTickGapAt = 0;
+        long maxInputWait = 0;
+        long maxPostDelay = 0;
+        for (int i = 0; reader.next(); i++) {
+            FlightEvent event = reader.getEvent();
+            long value = reader.getValue();
+            if (event == FlightEvent.TICK) {
+                if (firstTickNanos == 0) {
+                    firstTickNanos = value;
+                }
+                if (lastTickNanos != 0 && value - lastTickNanos > maxTickGap) {
+                    maxTickGap = value - lastTickNanos;
+                    maxTickGapAt = reader.getTick();
+                }
+                lastTickNanos = value;
+            } else if (event == FlightEvent.INPUT) {
+                maxInputWait = Math.max(maxInputWait, value);
+            } else if (event == FlightEvent.POST_DELAY) {
+                maxPostDelay = Math.max(maxPostDelay, value);
+            } else if (event == FlightEvent.NEW_GAME) {
+                lastTickNanos = 0;
+            }
+            if (i >= skip) {
+                System.out.printf(Locale.US, "%10d  %-10s %s%n", reader.getTick(), event == null ? "?" : event,
+                        describe(event, reader.getArg(), event == FlightEvent.TICK ? value - firstTickNanos : value));
+            }
+        }
+        System.out.printf(Locale.US, "Longest game loop gap %.2f ms before tick %d%n", maxTickGap / 1e6,
+                maxTickGapAt);
+        System.out.printf(Locale.US, "Longest input wait %.2f ms, post delay %.2f ms%n", maxInputWait / 1e6,
+                maxPostDelay / 1e6);
+    }
+
+    /**
+     * Describes an event, the value of a {@link FlightEvent#TICK} being the time since the first.
+     */
+    private static String describe(FlightEvent event, int arg, long value) {
+        if (event == null) {
+            return String.format(Locale.US, "arg %d value %d", arg, value);
+        }
+        switch (event) {
+            case NEW_GAME:
+                return (arg == 1 ? "restored, seed " : "seed ") + value;
+            case TICK:
+                return String.format(Locale.US, "%d frames at %.3f ms", arg, value / 1e6);
+            case INPUT:
+                int input = arg & ~FlightRecorder.ACCEPTED;
+                return String.format(Locale.US, "%s %s after %.2f ms", input < INPUTS.length ? INPUTS[input] : "?",
+                        (arg & FlightRecorder.ACCEPTED) != 0 ? "accepted" : "rejected", value / 1e6);
+            case SPAWN:
+                return brickType(arg);
+            case LOCK:
+                return brickType(arg) + " at row " + value;
+            case CLEAR:
+                return arg + " lines, score " + value;
+            case GAME_OVER:
+                return "score " + value;
+            case POST_DELAY:
+                return String.format(Locale.US, "%.2f ms", value / 1e6);
+            default:
+                return "";
+        }
+    }
+
+    private static String brickType(int ordinal) {
+        return ordinal < BRICK_TYPES.length ? BRICK_TYPES[ordinal].toString() : "?";
+    }
+}
@@ -0,0 +1,522 @@
+package com.rose.tetris.fuzz;
+
+import com.rose.tetris.engine.GameRandom;
+import com.rose.tetris.engine.GravityCurve;
+import com.rose.tetris.engine.Input;
+import com.rose.tetris.engine.TetrisEngine;
+import com.rose.tetris.simulation.Options;
+import com.rose.tetris.simulation.SimulationRunner;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays the same seeded sequences of inputs and ticks on {@link TetrisEngine} and on the frozen
+ * {@link ReferenceEngine}, and compares the two after every one of them: the settled cells, the
+ * falling brick and its ghost, the preview, score, lines, timers and what each call returned.
+ * A mismatch is shrunk to a shortest sequence that still shows it and printed in the script
+ * letters of {@link com.rose.tetris.simulation.InputPolicy#scripted(String)}, with '.' for a tick.
+ * Once the comparison is done both engines play the first cases again on their own, and the run
+ * reports how much faster the engine is.
+ * <p>
+ * Case {@code i} of a run is seeded with {@code seed + i}. Odd seeds keep an undo history of up
+ * to 8 lock points. Half the cases press inputs at random, which ends most games within a few
+ * hundred ticks; the other half place each brick where it leaves the lowest, flattest stack, now
+ * and then somewhere at random or taking it back, so those games go on for the whole case. Run with
+ * {@code ./gradlew :benchmarks:fuzz -PfuzzArgs="--cases 1000000"}; the other options are
+ * {@code --seed}, {@code --ops} (inputs and ticks per case), {@code --input-rate} (the fraction of
+ * them that are inputs), {@code --width}, {@code --height}, {@code --gravity} (as in
+ * {@link SimulationRunner#parseGravity(String)}), {@code --threads} and
+ * {@code --case <seed>:<script>}, which replays one printed case and describes its mismatch.
+ */
+public final class DifferentialFuzzer {
+    private static final Input[] INPUTS = Input.values();
+    // Op i of a case is a tick if 0 and INPUTS[i - 1] otherwise, written as SCRIPT.charAt(i).
+    private static final String SCRIPT = ".LRUDHZ";
+    private static final int CASES_PER_TASK = 64;
+    private static final int TIMING_CASES = 2_000;
+    private static final int TICK = 0;
+    private static final int LEFT = 1 + Input.LEFT.ordinal();
+    private static final int RIGHT = 1 + Input.RIGHT.ordinal();
+    private static final int ROTATE = 1 + Input.ROTATE.ordinal();
+    private static final int HARD_DROP = 1 + Input.HARD_DROP.ordinal();
+    private static final int UNDO = 1 + Input.UNDO.ordinal();
+
+    private final int mWidth;
+    private final int mHeight;
+    private final GravityCurve mGravityCurve;
+    private final int mOps;
+    private final long mInputThreshold;
+
+    public DifferentialFuzzer(int width, int height, GravityCurve gravityCurve, int ops, double inputRate) {
+        mWidth = width;
+        mHeight = height;
+        mGravityCurve = gravityCurve;
+        mOps = ops;
+        mInputThreshold = (long) (inputRate * (1L << 53));
+    }
+
+    /**
+     * Returns the ops of the case seeded with {@code seed}.
+     */
+    byte[] generate(long seed) {
+        GameRandom random = new GameRandom(seed ^ SimulationRunner.INPUT_SEED_SALT);
+        byte[] ops = new byte[mOps];
+        if (random.nextInt(2) == 0) {
+            for (int i = 0; i < ops.length; i++) {
+                if ((random.nextLong() >>> 11) < mInputThreshold) {
+                    ops[i] = (byte) (1 + random.nextInt(INPUTS.length));
+                }
+            }
+            return ops;
+        }
+        TetrisEngine engine = newEngine(seed);
+        engine.setHistoryCapacity(historyCapacity(seed));
+        engine.newGame(seed);
+        TetrisEngine trial = newEngine(seed);
+        ByteBuffer state = ByteBuffer.allocate(engine.getStateSize());
+        int i = 0;
+        while (i < ops.length && !engine.isGameOver()) {
+            // Short of a gravity step, so the brick is still where it spawned at any speed.
+            for (int ticks = Math.min(random.nextInt(4), engine.getFramesUntilStep() - 1); ticks > 0; ticks--) {
+                i = emit(engine, ops, i, TICK);
+            }
+            if (engine.getHistorySize() > 1 && random.nextInt(16) == 0) {
+                i = emit(engine, ops, i, UNDO);
+                continue;
+            }
+            int placement = random.nextInt(128) == 0 ? random.nextInt(4 * mWidth) : place(engine, trial, state);
+            for (int turns = placement % 4; turns > 0; turns--) {
+                i = emit(engine, ops, i, ROTATE);
+            }
+            int shift = placement / 4 - mWidth / 2;
+            for (int moves = Math.abs(shift); moves > 0; moves--) {
+                i = emit(engine, ops, i, shift < 0 ? LEFT : RIGHT);
+            }
+            i = emit(engine, ops, i, HARD_DROP);
+        }
+        return ops;
+    }
+
+    /**
+     * Writes {@code op} at {@code i}, if the case is that long, and plays it on {@code engine}.
+     * Returns the index of the next op.
+     */
+    private static int emit(TetrisEngine engine, byte[] ops, int i, int op) {
+        if (i >= ops.length || engine.isGameOver()) {
+            return ops.length;
+        }
+        ops[i] = (byte) op;
+        if (op == TICK) {
+            engine.tick();
+        } else {
+            engine.apply(INPUTS[op - 1]);
+        }
+        return i + 1;
+    }
+
+    /**
+     * Tries every turn and shift of the next brick on {@code trial}, loaded with the state of
+     * {@code engine}, and returns the best as {@code 4 * (shift + width / 2) + turns}: the one
+     * whose cleared lines outweigh the height, holes and steps of the stack it leaves the most.
+     */
+    private int place(TetrisEngine engine, TetrisEngine trial, ByteBuffer state) {
+        state.clear();
+        engine.writeState(state);
+        int best = 0;
+        int bestScore = Integer.MIN_VALUE;
+        for (int placement = 0; placement < 4 * mWidth; placement++) {
+            state.rewind();
+            trial.readState(state);
+            for (int turns = placement % 4; turns > 0; turns--) {
+                trial.apply(Input.ROTATE);
+            }
+            int shift = placement / 4 - mWidth / 2;
+            for (int moves = Math.abs(shift); moves > 0; moves--) {
+                trial.apply(shift < 0 ? Input.LEFT : Input.RIGHT);
+            }
+            trial.apply(Input.HARD_DROP);
+            if (trial.isGameOver()) {
+                continue;
+            }
+            int score = 76 * (trial.getLines() - engine.getLines()) - evaluate(trial);
+            if (score > bestScore) {
+                best = placement;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Weighs the height of every column, its empty cells under the top one and the steps between
+     * neighbouring columns against each other.
+     */
+    private static int evaluate(TetrisEngine engine) {
+        int penalty = 0;
+        int previousHeight = -1;
+        for (int x = 0; x < engine.getWidth(); x++) {
+            int height = 0;
+            for (int y = 0; y < engine.getHeight(); y++) {
+                if ((engine.getRow(y, x >>> 6) & (1L << (x & 63))) != 0) {
+                    height = Math.max(height, engine.getHeight() - y);
+                } else if (height > 0) {
+                    penalty += 36;
+                }
+            }
+            penalty += 51 * height;
+            if (previousHeight >= 0) {
+                penalty += 18 * Math.abs(height - previousHeight);
+            }
+            previousHeight = height;
+        }
+        return penalty;
+    }
+
+    /**
+     * Returns how many lock points the case seeded with {@code seed} keeps for undo.
+     */
+    static int historyCapacity(long seed) {
+        return (seed & 1) == 0 ? 0 : 1 + (int) ((seed >>> 1) & 7);
+    }
+
+    TetrisEngine newEngine(long seed) {
+        TetrisEngine engine = new TetrisEngine(mWidth, mHeight, seed);
+        engine.setGravityCurve(mGravityCurve);
+        return engine;
+    }
+
+    ReferenceEngine newReference(long seed) {
+        ReferenceEngine reference = new ReferenceEngine(mWidth, mHeight, seed);
+        reference.setGravityCurve(mGravityCurve);
+        return reference;
+    }
+
+    /**
+     * Plays the first {@code count} ops on both engines from a new game seeded with {@code seed}
+     * and returns how many ops were played when they first differed, 0 meaning right after the
+     * new game, or -1 if they never did. Describes the difference in {@code why}, if not null.
+     * Stops early once both games are over.
+     */
+    static int play(TetrisEngine engine, ReferenceEngine reference, long seed, byte[] ops, int count,
+                    StringBuilder why) {
+        engine.setHistoryCapacity(historyCapacity(seed));
+        engine.newGame(seed);
+        reference.setHistoryCapacity(historyCapacity(seed));
+        reference.newGame(seed);
+        String difference = compare(engine, reference);
+        for (int i = 0; difference == null && i < count; i++) {
+            if (engine.isGameOver() && reference.isGameOver()) {
+                return -1;
+            }
+            boolean actual;
+            boolean expected;
+            if (ops[i] == 0) {
+                actual = engine.tick();
+                expected = reference.tick();
+            } else {
+                actual = engine.apply(INPUTS[ops[i] - 1]);
+                expected = reference.apply(INPUTS[ops[i] - 1]);
+            }
+            difference = actual != expected
+                    ? "returned " + actual + ", expected " + expected
+                    : compare(engine, reference);
+            if (difference != null) {
+                if (why != null) {
+                    why.append("op ").append(i).append(" '").append(SCRIPT.charAt(ops[i])).append("' ")
+                            .append(difference);
+                }
+                return i + 1;
+            }
+        }
+        if (difference != null && why != null) {
+            why.append("new game ").append(difference);
+        }
+        return difference == null ? -1 : 0;
+    }
+
+    /**
+     * Returns what differs between the two engines, or null if nothing does.
+     */
+    private static String compare(TetrisEngine engine, ReferenceEngine reference) {
+        if (engine.getTick() != reference.getTick()) {
+            return "tick " + engine.getTick() + ", expected " + reference.getTick();
+        }
+        if (engine.getFramesUntilStep() != reference.getFramesUntilStep()) {
+            return "frames until step " + engine.getFramesUntilStep() + ", expected " + reference.getFramesUntilStep();
+        }
+        if (engine.getScore() != reference.getScore() || engine.getLines() != reference.getLines()) {
+            return "score " + engine.getScore() + " lines " + engine.getLines()
+                    + ", expected " + reference.getScore() + " lines " + reference.getLines();
+        }
+        if (engine.isGameOver() != reference.isGameOver()) {
+            return "game over " + engine.isGameOver() + ", expected " + reference.isGameOver();
+        }
+        for (int i = 0; i < TetrisEngine.PREVIEW_SIZE; i++) {
+            if (engine.getUpcomingBrick(i) != reference.getUpcomingBrick(i)) {
+                return "upcoming brick " + i + " " + engine.getUpcomingBrick(i)
+                        + ", expected " + reference.getUpcomingBrick(i);
+            }
+        }
+        int width = engine.getWidth();
+        for (int y = 0; y < engine.getHeight(); y++) {
+            for (int word = 0; word < engine.getWordCount(); word++) {
+                long expected = 0;
+                for (int x = word << 6; x < Math.min(width, (word + 1) << 6); x++) {
+                    if (reference.isCell(x, y)) {
+                        expected |= 1L << (x & 63);
+                    }
+                }
+                if (engine.getRow(y, word) != expected) {
+                    return "row " + y + " word " + word + " " + Long.toBinaryString(engine.getRow(y, word))
+                            + ", expected " + Long.toBinaryString(expected);
+                }
+            }
+        }
+        return compareFalling(engine, reference);
+    }
+
+    private static String compareFalling(TetrisEngine engine, ReferenceEngine reference) {
+        int top = engine.getFallingTop();
+        int cells = 0;
+        for (int y = top; y < top + 4; y++) {
+            for (int word = 0; word < engine.getWordCount(); word++) {
+                cells += Long.bitCount(engine.getFallingRow(y, word));
+            }
+        }
+        if (!reference.hasFallingBrick()) {
+            return cells == 0 ? null : "falling brick, expected none";
+        }
+        if (top != reference.getFallingTop()) {
+            return "falling top " + top + ", expected " + reference.getFallingTop();
+        }
+        int[] expected = reference.getFallingCells();
+        for (int i = 0; i < expected.length; i += 2) {
+            int x = expected[i];
+            if ((engine.getFallingRow(expected[i + 1], x >>> 6) & (1L << (x & 63))) == 0) {
+                return "falling brick misses " + x + "," + expected[i + 1];
+            }
+        }
+        if (cells != expected.length / 2) {
+            return "falling brick has " + cells + " cells, expected " + expected.length / 2;
+        }
+        if (engine.getGhostTop() != reference.getGhostTop()) {
+            return "ghost top " + engine.getGhostTop() + ", expected " + reference.getGhostTop();
+        }
+        return null;
+    }
+
+    /**
+     * Returns a shortest sequence of ops, as far as removing runs of them finds one, that still
+     * makes the engines differ.
+     */
+    byte[] shrink(long seed, byte[] ops) {
+        TetrisEngine engine = newEngine(seed);
+        ReferenceEngine reference = newReference(seed);
+        byte[] current = Arrays.copyOf(ops, Math.max(play(engine, reference, seed, ops, ops.length, null), 0));
+        for (int chunk = Math.max(current.length / 2, 1); chunk >= 1; ) {
+            boolean isShrunk = false;
+            for (int start = 0; start < current.length; ) {
+                byte[] candidate = new byte[current.length - Math.min(chunk, current.length - start)];
+                System.arraycopy(current, 0, candidate, 0, start);
+                System.arraycopy(current, current.length - candidate.length + start, candidate, start,
+                        candidate.length - start);
+                int played = play(engine, reference, seed, candidate, candidate.length, null);
+                if (played >= 0) {
+                    current = Arrays.copyOf(candidate, played);
+                    isShrunk = true;
+                } else {
+                    start += chunk;
+                }
+            }
+            if (!isShrunk) {
+                chunk /= 2;
+            }
+        }
+        return current;
+    }
+
+    static String toScript(byte[] ops) {
+        StringBuilder script = new StringBuilder(ops.length);
+        for (byte op : ops) {
+            script.append(SCRIPT.charAt(op));
+        }
+        return script.toString();
+    }
+
+    static byte[] fromScript(String script) {
+        byte[] ops = new byte[script.length()];
+        for (int i = 0; i < ops.length; i++) {
+            ops[i] = (byte) Math.max(SCRIPT.indexOf(script.charAt(i)), 0);
+        }
+        return ops;
+    }
+
+    /**
+     * Runs cases {@code from} until {@code to} and returns the first that mismatches, or -1.
+     */
+    private long fuzz(long seed, long from, long to, long[] ticks) {
+        TetrisEngine engine = newEngine(seed);
+        ReferenceEngine reference = newReference(seed);
+        for (long i = from; i < to; i++) {
+            byte[] ops = generate(seed + i);
+            if (play(engine, reference, seed + i, ops, ops.length, null) >= 0) {
+                return i;
+            }
+            ticks[0] += engine.getTick();
+        }
+        return -1;
+    }
+
+    private final class FuzzTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final long mSeed;
+        private final long mFrom;
+        private final long mTo;
+
+        FuzzTask(long seed, long from, long to) {
+            mSeed = seed;
+            mFrom = from;
+            mTo = to;
+        }
+
+        /**
+         * Returns {first mismatching case or -1, ticks played}.
+         */
+        @Override
+        protected long[] compute() {
+            if (mTo - mFrom <= CASES_PER_TASK) {
+                long[] ticks = new long[1];
+                long mismatch = fuzz(mSeed, mFrom, mTo, ticks);
+                return new long[]{mismatch, ticks[0]};
+            }
+            long middle = (mFrom + mTo) >>> 1;
+            FuzzTask first = new FuzzTask(mSeed, mFrom, middle);
+            first.fork();
+            long[] second = new FuzzTask(mSeed, middle, mTo).compute();
+            long[] result = first.join();
+            if (result[0] < 0) {
+                result[0] = second[0];
+            }
+            result[1] += second[1];
+            return result;
+        }
+    }
+
+    /**
+     * Plays the first cases on each engine alone and returns the nanoseconds per op of the
+     * reference and of the engine.
+     */
+    private double[] time(long seed, long cases) {
+        int count = (int) Math.min(cases, TIMING_CASES);
+        byte[][] ops = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            ops[i] = generate(seed + i);
+        }
+        TetrisEngine engine = newEngine(seed);
+        ReferenceEngine reference = newReference(seed);
+        double[] nanosPerOp = new double[2];
+        for (int round = 0; round < 2; round++) {
+            // The first round warms up both.
+            long ops0 = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                ops0 += playReference(reference, seed + i, ops[i]);
+            }
+            long referenceNanos = System.nanoTime() - start;
+            long ops1 = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                ops1 += playEngine(engine, seed + i, ops[i]);
+            }
+            long engineNanos = System.nanoTime() - start;
+            nanosPerOp[0] = (double) referenceNanos / Math.max(ops0, 1);
+            nanosPerOp[1] = (double) engineNanos / Math.max(ops1, 1);
+        }
+        return nanosPerOp;
+    }
+
+    private static int playEngine(TetrisEngine engine, long seed, byte[] ops) {
+        engine.setHistoryCapacity(historyCapacity(seed));
+        engine.newGame(seed);
+        int i = 0;
+        for (; i < ops.length && !engine.isGameOver(); i++) {
+            if (ops[i] == 0) {
+                engine.tick();
+            } else {
+                engine.apply(INPUTS[ops[i] - 1]);
+            }
+        }
+        return i;
+    }
+
+    private static int playReference(ReferenceEngine reference, long seed, byte[] ops) {
+        reference.setHistoryCapacity(historyCapacity(seed));
+        reference.newGame(seed);
+        int i = 0;
+        for (; i < ops.length && !reference.isGameOver(); i++) {
+            if (ops[i] == 0) {
+                reference.tick();
+            } else {
+                reference.apply(INPUTS[ops[i] - 1]);
+            }
+        }
+        return i;
+    }
+
+    public static void main(String[] args) {
+        Options options = Options.parse("DifferentialFuzzer", args, "--cases", "--seed", "--ops",
+                "--input-rate", "--width", "--height", "--gravity", "--threads", "--case");
+        long cases = options.getLong("--cases", 100_000);
+        long seed = options.getLong("--seed", 1);
+        int ops = options.getInt("--ops", 20_000);
+        double inputRate = options.getDouble("--input-rate", 0.3);
+        int width = options.getInt("--width", TetrisEngine.DEFAULT_WIDTH);
+        int height = options.getInt("--height", TetrisEngine.DEFAULT_HEIGHT);
+        GravityCurve gravityCurve = SimulationRunner.parseGravity(options.get("--gravity", "default"));
+        int threads = options.getInt("--threads", Runtime.getRuntime().availableProcessors());
+        String single = options.get("--case", null);
+
+        DifferentialFuzzer fuzzer = new DifferentialFuzzer(width, height, gravityCurve, ops, inputRate);
+        if (single != null) {
+            int colon = single.indexOf(':');
+            long caseSeed = Long.parseLong(single.substring(0, colon));
+            byte[] caseOps = fromScript(single.substring(colon + 1));
+            StringBuilder why = new StringBuilder();
+            int played = play(fuzzer.newEngine(caseSeed), fuzzer.newReference(caseSeed), caseSeed, caseOps,
+                    caseOps.length, why);
+            System.out.println(played < 0 ? "No mismatch" : "Mismatch at " + why);
+            System.exit(played < 0 ? 0 : 1);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        long[] result = pool.invoke(fuzzer.new FuzzTask(seed, 0, cases));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+        System.out.printf("%d cases, %d ticks in %.2f s on %d threads%n", cases, result[1], seconds, threads);
+
+        if (result[0] >= 0) {
+            long caseSeed = seed + result[0];
+            byte[] caseOps = fuzzer.generate(caseSeed);
+            StringBuilder why = new StringBuilder();
+            int played = play(fuzzer.newEngine(caseSeed), fuzzer.newReference(caseSeed), caseSeed, caseOps,
+                    caseOps.length, why);
+            byte[] shrunk = fuzzer.shrink(caseSeed, caseOps);
+            StringBuilder shrunkWhy = new StringBuilder();
+            play(fuzzer.newEngine(caseSeed), fuzzer.newReference(caseSeed), caseSeed, shrunk, shrunk.length,
+                    shrunkWhy);
+            System.out.printf("Case %d mismatches after %d ops at %s%n", result[0], played, why);
+            System.out.printf("Shrunk to %d ops, at %s:%n--case %d:%s%n",
+                    shrunk.length, shrunkWhy, caseSeed, toScript(shrunk));
+            System.exit(1);
+        }
+
+        double[] nanosPerOp = fuzzer.time(seed, cases);
+        System.out.printf("No mismatches. Reference %.1f ns/op, engine %.1f ns/op: %.1fx faster%n",
+                nanosPerOp[0], nanosPerOp[1], nanosPerOp[0] / nanosPerOp[1]);
+    }
+}
@@ -0,0 +1,528 @@
+package com.rose.tetris.fuzz;
+
+import com.rose.tetris.engine.BrickType;
+import com.rose.tetris.engine.GameRandom;
+import com.rose.tetris.engine.GravityCurve;
+import com.rose.tetris.engine.Input;
+import com.rose.tetris.engine.TetrisEngine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The rules of {@link TetrisEngine} written down as plainly as possible: one boolean per cell,
+ * bricks as lists of cells and every check a loop over them. Only the brick shapes, the random
+ * generator, the gravity curve and the lock delay constants are shared with the engine;
+ * orientations, kicks, collisions, drops, lock delays, line clears, scoring and undo are worked out
+ * here again from scratch. Undo keeps a whole copy of the game for every lock point.
+ * <p>
+ * This class is frozen. It is slow on purpose and must not be optimized or refactored along with
+ * the engine; it only changes when the rules of the game do, and then in the same commit.
+ */
+public final class ReferenceEngine {
+    private static final BrickType[] TYPES = BrickType.values();
+    private static final int SIZE = BrickType.SIZE;
+    private static final int ROTATIONS = 4;
+    private static final int[] LINE_SCORES = {0, 100, 300, 500, 800};
+    private static final int COMBO_SCORE = 50;
+    // Per type and orientation, the cells inside the box as {x0, y0, x1, y1, ...}.
+    private static final int[][][] CELLS = new int[TYPES.length][ROTATIONS][];
+    // Per type and orientation, the box offsets to try when turning clockwise, as {dx0, dy0, ...}.
+    private static final int[][][] KICKS = new int[TYPES.length][ROTATIONS][];
+
+    static {
+        for (BrickType type : TYPES) {
+            buildOrientations(type.ordinal(), type);
+        }
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final boolean[][] mCells;
+    private final GameRandom mRandom = new GameRandom(0);
+    private final List<BrickType> mQueue = new ArrayList<>();
+    private GravityCurve mGravityCurve = GravityCurve.DEFAULT;
+    // The game right after each of the last mHistoryCapacity bricks settled, oldest first.
+    private final List<LockPoint> mHistory = new ArrayList<>();
+    private int mHistoryCapacity;
+
+    private long mTick;
+    private int mGravityCredit;
+    private int mScore;
+    private int mLines;
+    private int mCombo;
+    private boolean mIsBackToBack;
+    private boolean mIsGameOver;
+    // The falling brick, or null if nothing is falling.
+    private BrickType mType;
+    private int mRotation;
+    private int mX;
+    private int mTop;
+    private int mLockFrames;
+    private int mLockResets;
+    private int mLowestTop;
+
+    public ReferenceEngine(int width, int height, long seed) {
+        mWidth = width;
+        mHeight = height;
+        mCells = new boolean[height][width];
+        newGame(seed);
+    }
+
+    public void setGravityCurve(GravityCurve gravityCurve) {
+        mGravityCurve = gravityCurve;
+    }
+
+    /**
+     * Keeps the last {@code capacity} lock points for {@link Input#UNDO}, starting with the next
+     * new game.
+     */
+    public void setHistoryCapacity(int capacity) {
+        mHistoryCapacity = capacity;
+        mHistory.clear();
+    }
+
+    public void newGame(long seed) {
+        mRandom.setState(seed);
+        mTick = 0;
+        mGravityCredit = 0;
+        mScore = 0;
+        mLines = 0;
+        mCombo = -1;
+        mIsBackToBack = false;
+        mIsGameOver = false;
+        for (boolean[] row : mCells) {
+            Arrays.fill(row, false);
+        }
+        mType = null;
+        mQueue.clear();
+        fillQueue();
+        mHistory.clear();
+        recordLockPoint();
+    }
+
+    public long getTick() {
+        return mTick;
+    }
+
+    /**
+     * Counts the ticks until the next one that drops or settles the falling brick.
+     */
+    public int getFramesUntilStep() {
+        if (isResting()) {
+            return mLockFrames;
+        }
+        int level = mLines / TetrisEngine.LINES_PER_LEVEL;
+        int frames = 1;
+        for (int credit = mGravityCredit + mGravityCurve.getRows(level); credit < mGravityCurve.getFrames(level);
+                credit += mGravityCurve.getRows(level)) {
+            frames++;
+        }
+        return frames;
+    }
+
+    public int getScore() {
+        return mScore;
+    }
+
+    public int getLines() {
+        return mLines;
+    }
+
+    public boolean isGameOver() {
+        return mIsGameOver;
+    }
+
+    public BrickType getUpcomingBrick(int index) {
+        return mQueue.get(index);
+    }
+
+    public boolean isCell(int x, int y) {
+        return mCells[y][x];
+    }
+
+    public boolean hasFallingBrick() {
+        return mType != null;
+    }
+
+    public int getFallingTop() {
+        return mTop;
+    }
+
+    /**
+     * Returns the cells of the falling brick as {x0, y0, x1, y1, ...} on the board, rows above the
+     * board being negative.
+     */
+    public int[] getFallingCells() {
+        int[] cells = CELLS[mType.ordinal()][mRotation].clone();
+        for (int i = 0; i < cells.length; i += 2) {
+            cells[i] += mX;
+            cells[i + 1] += mTop;
+        }
+        return cells;
+    }
+
+    /**
+     * Returns the top of the box where the falling brick would land if dropped now.
+     */
+    public int getGhostTop() {
+        int top = mTop;
+        while (!collides(mRotation, mX, top + 1)) {
+            top++;
+        }
+        return top;
+    }
+
+    public boolean tick() {
+        if (mIsGameOver) {
+            return false;
+        }
+        mTick++;
+        boolean isChanged = false;
+        if (!isResting()) {
+            int level = mLines / TetrisEngine.LINES_PER_LEVEL;
+            mGravityCredit += mGravityCurve.getRows(level);
+            int rows = mGravityCredit / mGravityCurve.getFrames(level);
+            mGravityCredit %= mGravityCurve.getFrames(level);
+            if (rows == 0) {
+                return false;
+            }
+            spawnIfNeeded();
+            for (int i = 0; i < rows && !collides(mRotation, mX, mTop + 1); i++) {
+                mTop++;
+            }
+            updateLockDelay(false);
+            if (!isResting()) {
+                return true;
+            }
+            isChanged = true;
+        }
+        mLockFrames--;
+        if (mLockFrames > 0) {
+            return isChanged;
+        }
+        lock();
+        return true;
+    }
+
+    public boolean apply(Input input) {
+        if (mIsGameOver) {
+            return false;
+        }
+        switch (input) {
+            case LEFT:
+                spawnIfNeeded();
+                return move(-1);
+            case RIGHT:
+                spawnIfNeeded();
+                return move(1);
+            case ROTATE:
+                spawnIfNeeded();
+                return rotate();
+            case SOFT_DROP:
+                step();
+                return true;
+            case HARD_DROP:
+                spawnIfNeeded();
+                mTop = getGhostTop();
+                step();
+                return true;
+            case UNDO:
+                return undo();
+            default:
+                return false;
+        }
+    }
+
+    private void step() {
+        if (mIsGameOver) {
+            return;
+        }
+        spawnIfNeeded();
+        if (!collides(mRotation, mX, mTop + 1)) {
+            mTop++;
+            updateLockDelay(false);
+            return;
+        }
+        lock();
+    }
+
+    private boolean isResting() {
+        return mType != null && collides(mRotation, mX, mTop + 1);
+    }
+
+    /**
+     * Gives the brick its full lock delay back if it is lower than ever, or if it was moved or
+     * turned and has resets left.
+     */
+    private void updateLockDelay(boolean isMoved) {
+        if (mTop > mLowestTop) {
+            mLowestTop = mTop;
+            mLockResets = 0;
+            mLockFrames = TetrisEngine.LOCK_DELAY;
+        } else if (isMoved && mLockResets < TetrisEngine.MAX_LOCK_RESETS) {
+            mLockResets++;
+            mLockFrames = TetrisEngine.LOCK_DELAY;
+        }
+    }
+
+    private void lock() {
+        int[] cells = getFallingCells();
+        for (int i = 1; i < cells.length; i += 2) {
+            if (cells[i] < 0) {
+                mIsGameOver = true;
+                return;
+            }
+        }
+        for (int i = 0; i < cells.length; i += 2) {
+            mCells[cells[i + 1]][cells[i]] = true;
+        }
+        mType = null;
+        mGravityCredit = 0;
+
+        int lines = 0;
+        for (int y = mHeight - 1; y >= 0; y--) {
+            boolean isFull = true;
+            for (int x = 0; x < mWidth; x++) {
+                isFull &= mCells[y][x];
+            }
+            if (isFull) {
+                for (int above = y; above > 0; above--) {
+                    System.arraycopy(mCells[above - 1], 0, mCells[above], 0, mWidth);
+                }
+                Arrays.fill(mCells[0], false);
+                lines++;
+                y++;
+            }
+        }
+        if (lines == 0) {
+            mCombo = -1;
+        } else {
+            int multiplier = mLines / TetrisEngine.LINES_PER_LEVEL + 1;
+            int score = LINE_SCORES[Math.min(lines, 4)] * multiplier;
+            if (lines >= 4 && mIsBackToBack) {
+                score += score / 2;
+            }
+            mIsBackToBack = lines >= 4;
+            mCombo++;
+            score += COMBO_SCORE * mCombo * multiplier;
+            mScore += score;
+            mLines += lines;
+        }
+        recordLockPoint();
+    }
+
+    private void recordLockPoint() {
+        if (mHistoryCapacity == 0) {
+            return;
+        }
+        mHistory.add(new LockPoint(this));
+        if (mHistory.size() > mHistoryCapacity) {
+            mHistory.remove(0);
+        }
+    }
+
+    /**
+     * Goes back to the lock point before the newest one, with nothing falling yet. The tick keeps
+     * counting.
+     */
+    private boolean undo() {
+        if (mHistory.size() < 2) {
+            return false;
+        }
+        mHistory.remove(mHistory.size() - 1);
+        LockPoint point = mHistory.get(mHistory.size() - 1);
+        for (int y = 0; y < mHeight; y++) {
+            System.arraycopy(point.cells[y], 0, mCells[y], 0, mWidth);
+        }
+        mQueue.clear();
+        mQueue.addAll(point.queue);
+        mRandom.setState(point.randomState);
+        mScore = point.score;
+        mLines = point.lines;
+        mCombo = point.combo;
+        mIsBackToBack = point.isBackToBack;
+        mType = null;
+        mGravityCredit = 0;
+        return true;
+    }
+
+    private static final class LockPoint {
+        final boolean[][] cells;
+        final List<BrickType> queue;
+        final long randomState;
+        final int score;
+        final int lines;
+        final int combo;
+        final boolean isBackToBack;
+
+        LockPoint(ReferenceEngine game) {
+            cells = new boolean[game.mHeight][];
+            for (int y = 0; y < cells.length; y++) {
+                cells[y] = game.mCells[y].clone();
+            }
+            queue = new ArrayList<>(game.mQueue);
+            randomState = game.mRandom.getState();
+            score = game.mScore;
+            lines = game.mLines;
+            combo = game.mCombo;
+            isBackToBack = game.mIsBackToBack;
+        }
+    }
+
+    private void spawnIfNeeded() {
+        if (mType != null) {
+            return;
+        }
+        mType = mQueue.remove(0);
+        fillQueue();
+        mRotation = 0;
+        mX = (mWidth - SIZE) / 2;
+        mTop = -SIZE;
+        mLockFrames = TetrisEngine.LOCK_DELAY;
+        mLockResets = 0;
+        mLowestTop = mTop;
+    }
+
+    /**
+     * Deals shuffled bags of every type until the preview is full.
+     */
+    private void fillQueue() {
+        while (mQueue.size() < TetrisEngine.PREVIEW_SIZE) {
+            BrickType[] bag = new BrickType[TYPES.length];
+            for (int i = 0; i < bag.length; i++) {
+                int j = mRandom.nextInt(i + 1);
+                bag[i] = bag[j];
+                bag[j] = TYPES[i];
+            }
+            for (BrickType type : bag) {
+                mQueue.add(type);
+            }
+        }
+    }
+
+    private boolean move(int dx) {
+        if (collides(mRotation, mX + dx, mTop)) {
+            return false;
+        }
+        mX += dx;
+        updateLockDelay(true);
+        return true;
+    }
+
+    private boolean rotate() {
+        int rotation = (mRotation + 1) % ROTATIONS;
+        int[] kicks = KICKS[mType.ordinal()][mRotation];
+        for (int k = 0; k < kicks.length; k += 2) {
+            if (!collides(rotation, mX + kicks[k], mTop + kicks[k + 1])) {
+                mRotation = rotation;
+                mX += kicks[k];
+                mTop += kicks[k + 1];
+                updateLockDelay(true);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the falling brick turned to {@code rotation} with its box at {@code x},
+     * {@code top} would leave the sides or bottom of the board or overlap a settled cell. Rows above
+     * the board are open.
+     */
+    private boolean collides(int rotation, int x, int top) {
+        int[] cells = CELLS[mType.ordinal()][rotation];
+        for (int i = 0; i < cells.length; i += 2) {
+            int cellX = x + cells[i];
+            int cellY = top + cells[i + 1];
+            if (cellX < 0 || cellX >= mWidth || cellY >= mHeight) {
+                return true;
+            }
+            if (cellY >= 0 && mCells[cellY][cellX]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Turns each orientation clockwise inside the square that shares the top left corner of its
+     * bounding box, then moves it back toward where the first orientation sits in the box. The
+     * kicks place the turned brick in each of the squares sharing a corner with the bounding box.
+     */
+    private static void buildOrientations(int t, BrickType type) {
+        List<Integer> cells = new ArrayList<>();
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                if ((type.getShapeRow(y) & (1L << x)) != 0) {
+                    cells.add(x);
+                    cells.add(y);
+                }
+            }
+        }
+        CELLS[t][0] = toArray(cells);
+        int[] origin = bounds(CELLS[t][0]);
+        for (int r = 1; r < ROTATIONS; r++) {
+            int[] previous = CELLS[t][r - 1];
+            int[] b = bounds(previous);
+            int size = Math.max(b[1] - b[0], b[3] - b[2]) + 1;
+            int[] turned = new int[previous.length];
+            for (int i = 0; i < previous.length; i += 2) {
+                turned[i] = b[0] + size - 1 - (previous[i + 1] - b[2]);
+                turned[i + 1] = b[2] + previous[i] - b[0];
+            }
+            int[] tb = bounds(turned);
+            int left = Math.min(origin[0], SIZE - (tb[1] - tb[0] + 1));
+            int top = Math.min(origin[2], SIZE - (tb[3] - tb[2] + 1));
+            for (int i = 0; i < turned.length; i += 2) {
+                turned[i] += left - tb[0];
+                turned[i + 1] += top - tb[2];
+            }
+            CELLS[t][r] = turned;
+        }
+        for (int r = 0; r < ROTATIONS; r++) {
+            int[] c = bounds(CELLS[t][r]);
+            int[] n = bounds(CELLS[t][(r + 1) % ROTATIONS]);
+            int size = Math.max(c[1] - c[0], c[3] - c[2]) + 1;
+            int[][] anchors = {
+                    {c[0], c[2]}, {c[1] - size + 1, c[2]}, {c[0], c[3] - size + 1}, {c[1] - size + 1, c[3] - size + 1}};
+            List<Integer> kicks = new ArrayList<>();
+            for (int[] anchor : anchors) {
+                int dx = anchor[0] + size - 1 - (c[3] - anchor[1]) - n[0];
+                int dy = anchor[1] + c[0] - anchor[0] - n[2];
+                boolean isDuplicate = false;
+                for (int k = 0; k < kicks.size(); k += 2) {
+                    isDuplicate |= kicks.get(k) == dx && kicks.get(k + 1) == dy;
+                }
+                if (!isDuplicate) {
+                    kicks.add(dx);
+                    kicks.add(dy);
+                }
+            }
+            KICKS[t][r] = toArray(kicks);
+        }
+    }
+
+    /**
+     * Returns {left, right, top, bottom} of {@code cells}.
+     */
+    private static int[] bounds(int[] cells) {
+        int[] bounds = {Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        for (int i = 0; i < cells.length; i += 2) {
+            bounds[0] = Math.min(bounds[0], cells[i]);
+            bounds[1] = Math.max(bounds[1], cells[i]);
+            bounds[2] = Math.min(bounds[2], cells[i + 1]);
+            bounds[3] = Math.max(bounds[3], cells[i + 1]);
+        }
+        return bounds;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
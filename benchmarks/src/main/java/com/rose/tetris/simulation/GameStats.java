@@ -0,0 +1,102 @@
+package com.rose.tetris.simulation;
+
+import com.rose.tetris.engine.BrickType;
+import com.rose.tetris.engine.Histogram;
+
+/**
+ * Totals over a batch of simulated games. Each task of the runner fills its own instance and the
+ * results are merged with {@link #add(GameStats)}.
+ */
+public final class GameStats {
+    private static final BrickType[] BRICK_TYPES = BrickType.values();
+
+    private long mGames;
+    private long mToppedOut;
+    private final Histogram mPieces = new Histogram();
+    private final Histogram mLines = new Histogram();
+    private final Histogram mTicksToTopOut = new Histogram();
+    private final long[] mBricks = new long[BRICK_TYPES.length];
+
+    void addBrick(BrickType type) {
+        mBricks[type.ordinal()]++;
+    }
+
+    void addGame(long pieces, long lines, long ticks, boolean isToppedOut) {
+        mGames++;
+        mPieces.record(pieces);
+        mLines.record(lines);
+        if (isToppedOut) {
+            mToppedOut++;
+            mTicksToTopOut.record(ticks);
+        }
+    }
+
+    public void add(GameStats stats) {
+        mGames += stats.mGames;
+        mToppedOut += stats.mToppedOut;
+        mPieces.add(stats.mPieces);
+        mLines.add(stats.mLines);
+        mTicksToTopOut.add(stats.mTicksToTopOut);
+        for (int i = 0; i < mBricks.length; i++) {
+            mBricks[i] += stats.mBricks[i];
+        }
+    }
+
+    public long getGames() {
+        return mGames;
+    }
+
+    public long getToppedOut() {
+        return mToppedOut;
+    }
+
+    public Histogram getPieces() {
+        return mPieces;
+    }
+
+    public Histogram getLines() {
+        return mLines;
+    }
+
+    /**
+     * Ticks each game lasted, counting only the games that ended by topping out.
+     */
+    public Histogram getTicksToTopOut() {
+        return mTicksToTopOut;
+    }
+
+    public long getBricks(BrickType type) {
+        return mBricks[type.ordinal()];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("games: ").append(mGames)
+                .append(", topped out: ").append(mToppedOut).append('\n');
+        appendDistribution(builder, "pieces per game", mPieces);
+        appendDistribution(builder, "lines per game", mLines);
+        appendDistribution(builder, "ticks to top-out", mTicksToTopOut);
+        long bricks = 0;
+        for (long count : mBricks) {
+            bricks += count;
+        }
+        builder.append("bricks:");
+        for (BrickType type : BRICK_TYPES) {
+            builder.append(String.format(" %s %.2f%%", type,
+                    bricks == 0 ? 0.0 : 100.0 * mBricks[type.ordinal()] / bricks));
+        }
+        return builder.append('\n').toString();
+    }
+
+    private static void appendDistribution(StringBuilder builder, String name, Histogram histogram) {
+        builder.append(name)
+                .append(": mean ").append(histogram.getMean())
+                .append(", p10 ").append(histogram.getValueAtPercentile(10))
+                .append(", p50 ").append(histogram.getValueAtPercentile(50))
+                .append(", p90 ").append(histogram.getValueAtPercentile(90))
+                .append(", p99 ").append(histogram.getValueAtPercentile(99))
+                .append(", max ").append(histogram.getMax())
+                .append('\n');
+    }
+}
@@ -0,0 +1,73 @@
+package com.rose.tetris.simulation;
+
+import com.rose.tetris.engine.GameRandom;
+import com.rose.tetris.engine.Input;
+
+/**
+ * Decides what the simulated player does on each tick. Policies hold no state of their own, so
+ * one instance can drive any number of games on any number of threads; everything random comes
+ * from the per-game generator passed in, which keeps a game reproducible from its seed.
+ */
+public interface InputPolicy {
+    /**
+     * Returns the input to apply before tick {@code tick}, or null to do nothing on that tick.
+     */
+    Input next(long tick, GameRandom random);
+
+    /**
+     * Applies a uniformly random input on a fraction {@code inputsPerTick} of the ticks.
+     */
+    static InputPolicy random(double inputsPerTick) {
+        Input[] inputs = Input.values();
+        long threshold = (long) (inputsPerTick * (1L << 53));
+        return (tick, random) -> (random.nextLong() >>> 11) < threshold
+                ? inputs[random.nextInt(inputs.length)]
+                : null;
+    }
+
+    /**
+     * Plays {@code script} over and over, one character per tick: L and R move, U rotates, D drops
+     * one row, H drops all the way, Z undoes the last brick and any other character does nothing.
+     */
+    static InputPolicy scripted(String script) {
+        Input[] inputs = new Input[script.length()];
+        for (int i = 0; i < inputs.length; i++) {
+            switch (script.charAt(i)) {
+                case 'L':
+                    inputs[i] = Input.LEFT;
+                    break;
+                case 'R':
+                    inputs[i] = Input.RIGHT;
+                    break;
+                case 'U':
+                    inputs[i] = Input.ROTATE;
+                    break;
+                case 'D':
+                    inputs[i] = Input.SOFT_DROP;
+                    break;
+                case 'H':
+                    inputs[i] = Input.HARD_DROP;
+                    break;
+                case 'Z':
+                    inputs[i] = Input.UNDO;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return (tick, random) -> inputs[(int) (tick % inputs.length)];
+    }
+
+    /**
+     * Parses {@code random:<inputs per tick>} or {@code script:<script>}.
+     */
+    static InputPolicy parse(String spec) {
+        if (spec.startsWith("random:")) {
+            return random(Double.parseDouble(spec.substring("random:".length())));
+        }
+        if (spec.startsWith("script:") && spec.length() > "script:".length()) {
+            return scripted(spec.substring("script:".length()));
+        }
+        throw new IllegalArgumentException("Unknown input policy: " + spec);
+    }
+}
@@ -0,0 +1,75 @@
+package com.rose.tetris.simulation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@code --name value} options given to a command line tool. An option the tool does not
+ * take, or one without a value, prints the usage and exits, as does {@code --help}.
+ */
+public final class Options {
+    private final Map<String, String> mValues = new HashMap<>();
+
+    private Options() {
+    }
+
+    /**
+     * Parses {@code args} for the tool called {@code tool}, which takes the options {@code names}.
+     */
+    public static Options parse(String tool, String[] args, String... names) {
+        StringBuilder usage = new StringBuilder("Usage: ").append(tool);
+        for (String name : names) {
+            usage.append(" [").append(name).append(" <value>]");
+        }
+
+        Options options = new Options();
+        for (int i = 0; i < args.length; i += 2) {
+            if (args[i].equals("--help")) {
+                System.out.println(usage);
+                System.exit(0);
+            }
+            String error = null;
+            if (!contains(names, args[i])) {
+                error = "Unknown option: " + args[i];
+            } else if (i + 1 == args.length) {
+                error = "Missing value for " + args[i];
+            }
+            if (error != null) {
+                System.err.println(error);
+                System.err.println(usage);
+                System.exit(2);
+            }
+            options.mValues.put(args[i], args[i + 1]);
+        }
+        return options;
+    }
+
+    private static boolean contains(String[] names, String name) {
+        for (String candidate : names) {
+            if (candidate.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String get(String name, String fallback) {
+        String value = mValues.get(name);
+        return value != null ? value : fallback;
+    }
+
+    public int getInt(String name, int fallback) {
+        String value = mValues.get(name);
+        return value != null ? Integer.parseInt(value) : fallback;
+    }
+
+    public long getLong(String name, long fallback) {
+        String value = mValues.get(name);
+        return value != null ? Long.parseLong(value) : fallback;
+    }
+
+    public double getDouble(String name, double fallback) {
+        String value = mValues.get(name);
+        return value != null ? Double.parseDouble(value) : fallback;
+    }
+}
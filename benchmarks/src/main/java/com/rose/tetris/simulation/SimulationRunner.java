@@ -0,0 +1,162 @@
+package com.rose.tetris.simulation;
+
+import com.rose.tetris.engine.BrickType;
+import com.rose.tetris.engine.GameRandom;
+import com.rose.tetris.engine.GravityCurve;
+import com.rose.tetris.engine.Input;
+import com.rose.tetris.engine.TetrisEngine;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays seeded games without a UI on every core and reports what they looked like. Game
+ * {@code i} of a run is seeded with {@code seed + i}, so any single game can be replayed by running
+ * one game from its seed.
+ * <p>
+ * Run with {@code ./gradlew :benchmarks:simulate -PsimArgs="--games 1000000 --policy random:0.2"};
+ * the other options are {@code --seed}, {@code --width}, {@code --height}, {@code --max-ticks},
+ * {@code --gravity} (see {@link #parseGravity(String)}) and {@code --threads}.
+ */
+public final class SimulationRunner {
+    /**
+     * Mixed into the seed of a game to seed the inputs played in it, so they do not follow the
+     * engine's random numbers, which come from the same seed. The fuzzer seeds its ops this way
+     * too.
+     */
+    public static final long INPUT_SEED_SALT = 0x5DEECE66DL;
+
+    // Games one task plays before it stops splitting; large enough to amortize a task and the
+    // engine it creates.
+    private static final int GAMES_PER_TASK = 256;
+
+    private final InputPolicy mPolicy;
+    private final int mWidth;
+    private final int mHeight;
+    private final long mMaxTicks;
+    private final GravityCurve mGravityCurve;
+
+    public SimulationRunner(InputPolicy policy, int width, int height, long maxTicks, GravityCurve gravityCurve) {
+        mPolicy = policy;
+        mWidth = width;
+        mHeight = height;
+        mMaxTicks = maxTicks;
+        mGravityCurve = gravityCurve;
+    }
+
+    /**
+     * Plays {@code games} games seeded from {@code seed} on {@code pool}.
+     */
+    public GameStats run(ForkJoinPool pool, long seed, long games) {
+        return pool.invoke(new GamesTask(seed, 0, games));
+    }
+
+    private GameStats play(long seed, long from, long to) {
+        GameStats stats = new GameStats();
+        TetrisEngine engine = new TetrisEngine(mWidth, mHeight, seed);
+        engine.setGravityCurve(mGravityCurve);
+        GameRandom inputRandom = new GameRandom(0);
+        long[] pieces = new long[1];
+        engine.setListener(new TetrisEngine.Listener() {
+            @Override
+            public void onBrickLocked(BrickType type) {
+            }
+
+            @Override
+            public void onLinesCleared(int lines, int score) {
+            }
+
+            @Override
+            public void onBrickSpawned(BrickType type) {
+                pieces[0]++;
+                stats.addBrick(type);
+            }
+
+            @Override
+            public void onGameOver() {
+            }
+        });
+
+        for (long i = from; i < to; i++) {
+            engine.newGame(seed + i);
+            inputRandom.setState((seed + i) ^ INPUT_SEED_SALT);
+            pieces[0] = 0;
+            while (!engine.isGameOver() && engine.getTick() < mMaxTicks) {
+                Input input = mPolicy.next(engine.getTick(), inputRandom);
+                if (input != null) {
+                    engine.apply(input);
+                }
+                engine.tick();
+            }
+            stats.addGame(pieces[0], engine.getLines(), engine.getTick(), engine.isGameOver());
+        }
+        return stats;
+    }
+
+    private class GamesTask extends RecursiveTask<GameStats> {
+        private static final long serialVersionUID = 1L;
+
+        private final long mSeed;
+        private final long mFrom;
+        private final long mTo;
+
+        GamesTask(long seed, long from, long to) {
+            mSeed = seed;
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        protected GameStats compute() {
+            if (mTo - mFrom <= GAMES_PER_TASK) {
+                return play(mSeed, mFrom, mTo);
+            }
+            long middle = (mFrom + mTo) >>> 1;
+            GamesTask first = new GamesTask(mSeed, mFrom, middle);
+            first.fork();
+            GameStats stats = new GamesTask(mSeed, middle, mTo).compute();
+            stats.add(first.join());
+            return stats;
+        }
+    }
+
+    /**
+     * Parses a gravity curve given on the command line: {@code default}, frames per row such as
+     * {@code 25}, or rows every so many frames such as {@code 3/2} or {@code 20/1}, at every level.
+     */
+    public static GravityCurve parseGravity(String value) {
+        if (value.equals("default")) {
+            return GravityCurve.DEFAULT;
+        }
+        int slash = value.indexOf('/');
+        if (slash < 0) {
+            return new GravityCurve(Integer.parseInt(value));
+        }
+        return new GravityCurve(new int[]{Integer.parseInt(value.substring(0, slash))},
+                new int[]{Integer.parseInt(value.substring(slash + 1))});
+    }
+
+    public static void main(String[] args) {
+        Options options = Options.parse("SimulationRunner", args, "--games", "--seed", "--policy",
+                "--width", "--height", "--max-ticks", "--gravity", "--threads");
+        long games = options.getLong("--games", 100_000);
+        long seed = options.getLong("--seed", 1);
+        String policy = options.get("--policy", "random:0.2");
+        int width = options.getInt("--width", TetrisEngine.DEFAULT_WIDTH);
+        int height = options.getInt("--height", TetrisEngine.DEFAULT_HEIGHT);
+        long maxTicks = options.getLong("--max-ticks", 1_000_000);
+        GravityCurve gravityCurve = parseGravity(options.get("--gravity", "default"));
+        int threads = options.getInt("--threads", Runtime.getRuntime().availableProcessors());
+
+        SimulationRunner runner = new SimulationRunner(InputPolicy.parse(policy), width, height, maxTicks, gravityCurve);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        GameStats stats = runner.run(pool, seed, games);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        System.out.printf("%d games in %.2f s on %d threads: %.0f games/s%n",
+                stats.getGames(), seconds, threads, stats.getGames() / seconds);
+        System.out.print(stats);
+    }
+}
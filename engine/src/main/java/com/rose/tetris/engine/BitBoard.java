@@ -0,0 +1,374 @@
+package com.rose.tetris.engine;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Playing area stored as bitmasks, {@link #getWordCount()} longs per row, bit {@code x % 64} of
+ * word {@code x / 64} being the cell at column {@code x}. Only settled boxes live here; the falling
+ * brick is kept as its own row masks, relative to the left edge of its box, and tested against the
+ * board with {@link #collides(long[], int, int)}.
+ * <p>
+ * Rows with a negative index are the hidden spawn area above the board. Nothing is ever settled
+ * there, so they only act as walls on the left and right.
+ * <p>
+ * Every row above {@link #getStackTop()} is empty, so clearing the board and removing rows only
+ * touch the rows in use, however tall the board is.
+ * <p>
+ * Next to the rows the board keeps the top of each column, updated as bricks settle and rows go,
+ * so {@link #getDropDistance(long[], int[], int, int)} finds where a brick lands from the columns
+ * it covers instead of probing row by row.
+ */
+class BitBoard {
+    private final int mWidth;
+    private final int mHeight;
+    private final int mWordCount;
+    private final long[] mFullWords;
+    private final long[] mRows;
+    private final int[] mColumnTops;
+    private int mStackTop;
+
+    BitBoard(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Unsupported board size: " + width + "x" + height);
+        }
+        mWidth = width;
+        mHeight = height;
+        mWordCount = (width + 63) >>> 6;
+        mFullWords = new long[mWordCount];
+        for (int i = 0; i < mWordCount; i++) {
+            int bits = Math.min(64, width - (i << 6));
+            mFullWords[i] = bits == 64 ? -1L : (1L << bits) - 1;
+        }
+        mRows = new long[height * mWordCount];
+        mColumnTops = new int[width];
+        Arrays.fill(mColumnTops, height);
+        mStackTop = height;
+    }
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+
+    int getWordCount() {
+        return mWordCount;
+    }
+
+    long getFullWord(int word) {
+        return mFullWords[word];
+    }
+
+    /**
+     * Returns a row index such that every row above it is empty.
+     */
+    int getStackTop() {
+        return mStackTop;
+    }
+
+    /**
+     * Returns the highest row of column {@code x} holding a box, or the height if it has none.
+     */
+    int getColumnTop(int x) {
+        return mColumnTops[x];
+    }
+
+    void clear() {
+        clearRows(mStackTop, mHeight);
+        mStackTop = mHeight;
+        Arrays.fill(mColumnTops, mHeight);
+    }
+
+    private void clearRows(int top, int bottom) {
+        for (int i = top * mWordCount; i < bottom * mWordCount; i++) {
+            mRows[i] = 0;
+        }
+    }
+
+    long getRow(int y, int word) {
+        return y >= 0 && y < mHeight ? mRows[y * mWordCount + word] : 0;
+    }
+
+    void setRow(int y, int word, long bits) {
+        bits &= mFullWords[word];
+        mRows[y * mWordCount + word] = bits;
+        if (bits != 0 && y < mStackTop) {
+            mStackTop = y;
+        }
+        long cleared = 0;
+        for (long set = bits; set != 0; set &= set - 1) {
+            int x = (word << 6) + Long.numberOfTrailingZeros(set);
+            mColumnTops[x] = Math.min(mColumnTops[x], y);
+        }
+        for (long unset = ~bits & mFullWords[word]; unset != 0; unset &= unset - 1) {
+            int bit = Long.numberOfTrailingZeros(unset);
+            if (mColumnTops[(word << 6) + bit] == y) {
+                cleared |= 1L << bit;
+            }
+        }
+        findColumnTops(word, cleared, y + 1);
+    }
+
+    /**
+     * Sets the top of each column of {@code word} in {@code columns} to the first box at or below
+     * row {@code from}, going through all of those columns at once.
+     */
+    private void findColumnTops(int word, long columns, int from) {
+        for (int y = from; y < mHeight && columns != 0; y++) {
+            long found = mRows[y * mWordCount + word] & columns;
+            columns &= ~found;
+            for (; found != 0; found &= found - 1) {
+                mColumnTops[(word << 6) + Long.numberOfTrailingZeros(found)] = y;
+            }
+        }
+        for (; columns != 0; columns &= columns - 1) {
+            mColumnTops[(word << 6) + Long.numberOfTrailingZeros(columns)] = mHeight;
+        }
+    }
+
+    void copyFrom(BitBoard board) {
+        if (board.mWidth != mWidth || board.mHeight != mHeight) {
+            throw new IllegalArgumentException("Boards differ in size");
+        }
+        if (mStackTop < board.mStackTop) {
+            clearRows(mStackTop, board.mStackTop);
+        }
+        int from = board.mStackTop * mWordCount;
+        System.arraycopy(board.mRows, from, mRows, from, mRows.length - from);
+        System.arraycopy(board.mColumnTops, 0, mColumnTops, 0, mWidth);
+        mStackTop = board.mStackTop;
+    }
+
+    void writeRows(ByteBuffer buffer) {
+        for (long row : mRows) {
+            buffer.putLong(row);
+        }
+    }
+
+    void readRows(ByteBuffer buffer) {
+        mStackTop = mHeight;
+        for (int i = 0; i < mRows.length; i++) {
+            long row = buffer.getLong();
+            mRows[i] = row & mFullWords[i % mWordCount];
+            if (row != 0 && i / mWordCount < mStackTop) {
+                mStackTop = i / mWordCount;
+            }
+        }
+        for (int word = 0; word < mWordCount; word++) {
+            findColumnTops(word, mFullWords[word], mStackTop);
+        }
+    }
+
+    /**
+     * Copies rows {@code top} to {@code bottom} into {@code rows} and the tops of the columns from
+     * {@code x} on into {@code columnTops}: with the stack top, what
+     * {@link #undoLock(long[], int[], int, int, int, int, int)} needs to take back a brick that is
+     * about to be merged into those rows.
+     */
+    void saveLock(long[] rows, int[] columnTops, int x, int top, int bottom) {
+        System.arraycopy(mRows, top * mWordCount, rows, 0, (bottom - top + 1) * mWordCount);
+        for (int j = 0; j < columnTops.length; j++) {
+            if (x + j >= 0 && x + j < mWidth) {
+                columnTops[j] = mColumnTops[x + j];
+            }
+        }
+    }
+
+    /**
+     * Takes back the brick merged into rows {@code top} to {@code bottom} and the {@code lines}
+     * full rows cleared after it, given what {@link #saveLock(long[], int[], int, int, int)} saved
+     * and the stack top before. It has to be the last brick merged. Only those rows are written,
+     * and the rows above them moved back up if lines were cleared.
+     */
+    void undoLock(long[] rows, int[] columnTops, int x, int top, int bottom, int lines, int stackTop) {
+        if (lines > 0 && stackTop < top) {
+            System.arraycopy(mRows, (stackTop + lines) * mWordCount, mRows, stackTop * mWordCount,
+                    (top - stackTop) * mWordCount);
+        }
+        System.arraycopy(rows, 0, mRows, top * mWordCount, (bottom - top + 1) * mWordCount);
+        mStackTop = stackTop;
+
+        // Columns topped in the rows that moved go back up with them, the columns of the brick get
+        // their saved tops, and every other column either starts in the restored rows or keeps
+        // its top below them.
+        for (int word = 0; word < mWordCount; word++) {
+            long unresolved = 0;
+            int left = word << 6;
+            int right = Math.min(mWidth, left + 64);
+            for (int column = left; column < right; column++) {
+                if (mColumnTops[column] < top + lines) {
+                    mColumnTops[column] -= lines;
+                } else {
+                    unresolved |= 1L << (column - left);
+                }
+            }
+            for (int y = top; y <= bottom && unresolved != 0; y++) {
+                long found = mRows[y * mWordCount + word] & unresolved;
+                unresolved &= ~found;
+                for (; found != 0; found &= found - 1) {
+                    mColumnTops[left + Long.numberOfTrailingZeros(found)] = y;
+                }
+            }
+        }
+        for (int j = 0; j < columnTops.length; j++) {
+            if (x + j >= 0 && x + j < mWidth) {
+                mColumnTops[x + j] = columnTops[j];
+            }
+        }
+    }
+
+    boolean isSet(int x, int y) {
+        return (getRow(y, x >>> 6) & (1L << x)) != 0;
+    }
+
+    /**
+     * Returns the bits of {@code mask}, placed with bit 0 at column {@code x}, that fall into word
+     * {@code word} of a row.
+     */
+    static long toWord(long mask, int x, int word) {
+        int shift = x - (word << 6);
+        if (shift >= 64 || shift <= -64) {
+            return 0;
+        }
+        return shift >= 0 ? mask << shift : mask >>> -shift;
+    }
+
+    /**
+     * Returns true if the brick given by {@code masks}, placed with bit 0 at column {@code x} and
+     * the first mask in row {@code top}, overlaps a settled box, the floor or one of the walls.
+     */
+    boolean collides(long[] masks, int x, int top) {
+        for (int i = 0; i < masks.length; i++) {
+            long mask = masks[i];
+            if (mask == 0) {
+                continue;
+            }
+            int y = top + i;
+            int left = x + Long.numberOfTrailingZeros(mask);
+            int right = x + 63 - Long.numberOfLeadingZeros(mask);
+            if (y >= mHeight || left < 0 || right >= mWidth) {
+                return true;
+            }
+            if (y < 0) {
+                continue;
+            }
+            int row = y * mWordCount;
+            for (int word = left >>> 6; word <= right >>> 6; word++) {
+                if ((mRows[row + word] & toWord(mask, x, word)) != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Settles the brick given by {@code masks}, placed as in {@link #collides(long[], int, int)}.
+     */
+    void merge(long[] masks, int x, int top) {
+        for (int i = 0; i < masks.length; i++) {
+            long mask = masks[i];
+            int y = top + i;
+            if (mask == 0 || y < 0 || y >= mHeight) {
+                continue;
+            }
+            int left = Math.max(0, x + Long.numberOfTrailingZeros(mask));
+            int right = Math.min(mWidth - 1, x + 63 - Long.numberOfLeadingZeros(mask));
+            int row = y * mWordCount;
+            for (int word = left >>> 6; word <= right >>> 6; word++) {
+                mRows[row + word] |= toWord(mask, x, word) & mFullWords[word];
+            }
+            for (long cells = mask; cells != 0; cells &= cells - 1) {
+                int column = x + Long.numberOfTrailingZeros(cells);
+                if (column >= 0 && column < mWidth && y < mColumnTops[column]) {
+                    mColumnTops[column] = y;
+                }
+            }
+            if (y < mStackTop) {
+                mStackTop = y;
+            }
+        }
+    }
+
+    /**
+     * Returns how many rows the brick given by {@code masks}, placed as in
+     * {@link #collides(long[], int, int)}, can fall before it settles. {@code bottoms} holds the
+     * lowest row of each column of its box, or -1 for an empty column. When every column of the
+     * brick is above the top of the stack there this only looks at the column tops; a brick tucked
+     * under an overhang falls back to testing row by row.
+     */
+    int getDropDistance(long[] masks, int[] bottoms, int x, int top) {
+        int distance = Integer.MAX_VALUE;
+        for (int j = 0; j < bottoms.length; j++) {
+            if (bottoms[j] < 0) {
+                continue;
+            }
+            int y = top + bottoms[j];
+            int columnTop = mColumnTops[x + j];
+            if (y >= columnTop) {
+                distance = 0;
+                while (!collides(masks, x, top + distance + 1)) {
+                    distance++;
+                }
+                return distance;
+            }
+            distance = Math.min(distance, columnTop - 1 - y);
+        }
+        return distance;
+    }
+
+    boolean isRowFull(int y) {
+        int row = y * mWordCount;
+        for (int i = 0; i < mWordCount; i++) {
+            if (mRows[row + i] != mFullWords[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes every full row from {@code top} to {@code bottom} and moves the rows above them down
+     * in one pass: the rows between full ones move once by the number of full rows below them, and
+     * everything above {@code top} moves as one block. Returns how many rows were removed.
+     */
+    int clearFullRows(int top, int bottom) {
+        top = Math.max(top, mStackTop);
+        bottom = Math.min(bottom, mHeight - 1);
+        int cleared = 0;
+        for (int y = bottom; y >= top; y--) {
+            if (isRowFull(y)) {
+                cleared++;
+            } else if (cleared > 0) {
+                System.arraycopy(mRows, y * mWordCount, mRows, (y + cleared) * mWordCount, mWordCount);
+            }
+        }
+        if (cleared == 0) {
+            return 0;
+        }
+        System.arraycopy(mRows, mStackTop * mWordCount, mRows, (mStackTop + cleared) * mWordCount,
+                (top - mStackTop) * mWordCount);
+        clearRows(mStackTop, mStackTop + cleared);
+        mStackTop += cleared;
+
+        // Every column reached a full row, so its top was at most bottom. Columns topped above top
+        // moved down with their rows; the others start somewhere from top down.
+        for (int word = 0; word < mWordCount; word++) {
+            long moved = 0;
+            int left = word << 6;
+            int right = Math.min(mWidth, left + 64);
+            for (int x = left; x < right; x++) {
+                if (mColumnTops[x] < top) {
+                    mColumnTops[x] += cleared;
+                } else {
+                    moved |= 1L << (x - left);
+                }
+            }
+            findColumnTops(word, moved, top);
+        }
+        return cleared;
+    }
+}
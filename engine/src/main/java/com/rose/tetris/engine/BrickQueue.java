@@ -0,0 +1,91 @@
+package com.rose.tetris.engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The bricks to come, dealt from bags that hold every {@link BrickType} once in a shuffled order.
+ * A player never waits more than 12 bricks for any type, and never sees more than two of a type
+ * in a row. The queue is a ring that {@link #fill(GameRandom, int)} tops up a whole bag at a time,
+ * so taking a brick is an index step and shuffling happens once every {@link #BAG_SIZE} bricks.
+ */
+final class BrickQueue {
+    private static final BrickType[] TYPES = BrickType.values();
+    static final int BAG_SIZE = TYPES.length;
+    // A power of two, room for the longest preview plus a bag.
+    static final int CAPACITY = 16;
+
+    private final BrickType[] mRing = new BrickType[CAPACITY];
+    private int mHead;
+    private int mCount;
+
+    void clear() {
+        mHead = 0;
+        mCount = 0;
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Adds bags until at least {@code count} bricks are queued, which is at most
+     * {@code CAPACITY - BAG_SIZE}.
+     */
+    void fill(GameRandom random, int count) {
+        while (mCount < count) {
+            int start = mHead + mCount;
+            for (int i = 0; i < BAG_SIZE; i++) {
+                int j = random.nextInt(i + 1);
+                mRing[(start + i) & (CAPACITY - 1)] = mRing[(start + j) & (CAPACITY - 1)];
+                mRing[(start + j) & (CAPACITY - 1)] = TYPES[i];
+            }
+            mCount += BAG_SIZE;
+        }
+    }
+
+    /**
+     * Returns the brick {@code index} places from the front, which has to be queued.
+     */
+    BrickType peek(int index) {
+        return mRing[(mHead + index) & (CAPACITY - 1)];
+    }
+
+    BrickType poll() {
+        BrickType type = mRing[mHead];
+        mHead = (mHead + 1) & (CAPACITY - 1);
+        mCount--;
+        return type;
+    }
+
+    void copyFrom(BrickQueue queue) {
+        System.arraycopy(queue.mRing, 0, mRing, 0, CAPACITY);
+        mHead = queue.mHead;
+        mCount = queue.mCount;
+    }
+
+    /**
+     * Writes the queued bricks in {@link #CAPACITY} + 1 bytes.
+     */
+    void write(ByteBuffer buffer) {
+        buffer.put((byte) mCount);
+        for (int i = 0; i < CAPACITY; i++) {
+            buffer.put((byte) (i < mCount ? peek(i).ordinal() : 0));
+        }
+    }
+
+    void read(ByteBuffer buffer) {
+        int count = buffer.get();
+        if (count < 0 || count > CAPACITY) {
+            throw new IllegalArgumentException("Not a brick queue");
+        }
+        mHead = 0;
+        mCount = count;
+        for (int i = 0; i < CAPACITY; i++) {
+            int ordinal = buffer.get();
+            if (ordinal < 0 || ordinal >= TYPES.length) {
+                throw new IllegalArgumentException("Not a brick queue");
+            }
+            mRing[i] = TYPES[ordinal];
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.rose.tetris.engine;
+
+public enum BrickType {
+    L(0b0000, 0b0010, 0b0010, 0b0110),
+    T(0b0000, 0b0010, 0b0110, 0b0010),
+    CHAIR(0b0000, 0b0010, 0b0110, 0b0100),
+    STICK(0b0010, 0b0010, 0b0010, 0b0010),
+    SQUARE(0b0000, 0b0110, 0b0110, 0b0000),
+    J(0b0000, 0b0100, 0b0100, 0b0110),
+    Z(0b0000, 0b0100, 0b0110, 0b0010);
+
+    public static final int SIZE = 4;
+    static final int ROTATIONS = 4;
+
+    // Row masks of the brick inside its 4x4 box, bit j being column j.
+    final long[] shape;
+    // The same for every orientation, each one a clockwise turn of the previous one and
+    // rotations[0] being shape.
+    final long[][] rotations;
+    // Box offsets to try, in order, when turning orientation r clockwise, as {dx0, dy0, dx1, ...}.
+    final int[][] kicks;
+    // For every orientation, the lowest row of each column of the box holding a cell, or -1.
+    final int[][] bottoms;
+
+    BrickType(long... shape) {
+        this.shape = shape;
+        rotations = new long[ROTATIONS][];
+        kicks = new int[ROTATIONS][];
+        buildRotations();
+        bottoms = new int[ROTATIONS][SIZE];
+        for (int r = 0; r < ROTATIONS; r++) {
+            for (int j = 0; j < SIZE; j++) {
+                bottoms[r][j] = -1;
+                for (int i = 0; i < SIZE; i++) {
+                    if ((rotations[r][i] & (1L << j)) != 0) {
+                        bottoms[r][j] = i;
+                    }
+                }
+            }
+        }
+    }
+
+    public long getShapeRow(int row) {
+        return shape[row];
+    }
+
+    /**
+     * Turns each orientation clockwise inside its bounding square, trying the four squares that
+     * share a corner with the bounding box of the brick, and records every distinct placement as
+     * a kick relative to where the next orientation sits in the box.
+     */
+    private void buildRotations() {
+        rotations[0] = shape;
+        int[] bounds = getBounds(shape);
+        int originX = bounds[0];
+        int originY = bounds[2];
+        for (int r = 1; r < ROTATIONS; r++) {
+            long[] rotated = rotate(rotations[r - 1], getBounds(rotations[r - 1]));
+            int[] rotatedBounds = getBounds(rotated);
+            int width = rotatedBounds[1] - rotatedBounds[0] + 1;
+            int height = rotatedBounds[3] - rotatedBounds[2] + 1;
+            rotations[r] = translate(rotated, rotatedBounds,
+                    Math.min(originX, SIZE - width), Math.min(originY, SIZE - height));
+        }
+
+        for (int r = 0; r < ROTATIONS; r++) {
+            int[] current = getBounds(rotations[r]);
+            int[] next = getBounds(rotations[(r + 1) % ROTATIONS]);
+            int size = Math.max(current[1] - current[0], current[3] - current[2]) + 1;
+            int[] anchors = {
+                    current[0], current[2],
+                    current[1] - size + 1, current[2],
+                    current[0], current[3] - size + 1,
+                    current[1] - size + 1, current[3] - size + 1};
+            int[] offsets = new int[anchors.length];
+            int count = 0;
+            for (int a = 0; a < anchors.length; a += 2) {
+                // Where the bounding box of the turned brick ends up for this square.
+                int dx = anchors[a] + size - 1 - (current[3] - anchors[a + 1]) - next[0];
+                int dy = anchors[a + 1] + current[0] - anchors[a] - next[2];
+                boolean isDuplicate = false;
+                for (int k = 0; k < count; k += 2) {
+                    isDuplicate |= offsets[k] == dx && offsets[k + 1] == dy;
+                }
+                if (!isDuplicate) {
+                    offsets[count++] = dx;
+                    offsets[count++] = dy;
+                }
+            }
+            kicks[r] = new int[count];
+            System.arraycopy(offsets, 0, kicks[r], 0, count);
+        }
+    }
+
+    /**
+     * Returns {left, right, top, bottom} of the cells in {@code rows}.
+     */
+    private static int[] getBounds(long[] rows) {
+        long columns = 0;
+        int top = -1;
+        int bottom = -1;
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i] != 0) {
+                columns |= rows[i];
+                if (top < 0) {
+                    top = i;
+                }
+                bottom = i;
+            }
+        }
+        return new int[]{
+                Long.numberOfTrailingZeros(columns), 63 - Long.numberOfLeadingZeros(columns), top, bottom};
+    }
+
+    /**
+     * Turns {@code rows} clockwise inside the square that has the same top left corner as its
+     * bounding box.
+     */
+    private static long[] rotate(long[] rows, int[] bounds) {
+        int x = bounds[0];
+        int y = bounds[2];
+        int size = Math.max(bounds[1] - bounds[0], bounds[3] - bounds[2]) + 1;
+        long[] rotated = new long[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            for (int j = 0; j < SIZE; j++) {
+                if ((rows[i] & (1L << j)) != 0) {
+                    // (j, i) goes to (x + size - 1 - (i - y), y + (j - x))
+                    rotated[y + j - x] |= 1L << (x + size - 1 - (i - y));
+                }
+            }
+        }
+        return rotated;
+    }
+
+    private static long[] translate(long[] rows, int[] bounds, int left, int top) {
+        long[] moved = new long[SIZE];
+        for (int i = bounds[2]; i <= bounds[3]; i++) {
+            long row = rows[i] >>> bounds[0];
+            moved[top + i - bounds[2]] = row << left;
+        }
+        return moved;
+    }
+}
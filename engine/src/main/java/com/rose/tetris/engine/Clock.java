@@ -0,0 +1,10 @@
+package com.rose.tetris.engine;
+
+/**
+ * Source of monotonic time for everything in the engine that waits or measures.
+ */
+public interface Clock {
+    Clock SYSTEM = System::nanoTime;
+
+    long nanoTime();
+}
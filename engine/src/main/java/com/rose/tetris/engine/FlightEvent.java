@@ -0,0 +1,45 @@
+package com.rose.tetris.engine;
+
+/**
+ * What a {@link FlightRecorder} event records. Ordinals are stored in flight records, so new kinds
+ * only ever go at the end.
+ */
+public enum FlightEvent {
+    /**
+     * A game started, or was restored if the argument is 1. The value is its seed.
+     */
+    NEW_GAME,
+    /**
+     * A run of the game loop. The argument is how many frames it was asked to advance and the
+     * value the clock when it started.
+     */
+    TICK,
+    /**
+     * An input was applied. The argument is its {@link Input} ordinal, or'ed with
+     * {@link FlightRecorder#ACCEPTED} if it changed the game, and the value how long it waited in
+     * the queue in nanoseconds.
+     */
+    INPUT,
+    /**
+     * A brick started falling. The argument is its {@link BrickType} ordinal.
+     */
+    SPAWN,
+    /**
+     * A brick settled. The argument is its {@link BrickType} ordinal and the value the row its box
+     * settled at.
+     */
+    LOCK,
+    /**
+     * A brick cleared lines. The argument is how many and the value the score after them.
+     */
+    CLEAR,
+    /**
+     * The game ended. The value is the final score.
+     */
+    GAME_OVER,
+    /**
+     * The main thread ran what the game loop posted to it. The value is how long after the post,
+     * in nanoseconds.
+     */
+    POST_DELAY
+}
@@ -0,0 +1,90 @@
+package com.rose.tetris.engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the events of a file written by {@link FlightRecorder#dump(java.io.File)}, oldest first,
+ * skipping the ones overwritten while it was written.
+ */
+public final class FlightRecordReader {
+    private static final FlightEvent[] EVENTS = FlightEvent.values();
+
+    private final ByteBuffer mBuffer;
+    private final long mTotalCount;
+    private final int mCount;
+    private int mIndex;
+    private FlightEvent mEvent;
+    private long mTick;
+    private int mArg;
+    private long mValue;
+
+    public FlightRecordReader(ByteBuffer buffer) {
+        mBuffer = buffer;
+        if (buffer.remaining() < FlightRecorder.HEADER_SIZE || buffer.getInt() != FlightRecorder.MAGIC) {
+            throw new IllegalArgumentException("Not a flight record");
+        }
+        int version = buffer.getInt();
+        if (version != FlightRecorder.VERSION) {
+            throw new IllegalArgumentException("Unsupported flight record version " + version);
+        }
+        mTotalCount = buffer.getLong();
+        int count = buffer.getInt();
+        int overwritten = buffer.getInt();
+        if (count < 0 || overwritten < 0 || overwritten > count
+                || (long) count * FlightRecorder.EVENT_SIZE > buffer.remaining()) {
+            throw new IllegalArgumentException("Truncated flight record");
+        }
+        buffer.position(buffer.position() + overwritten * FlightRecorder.EVENT_SIZE);
+        mCount = count - overwritten;
+    }
+
+    /**
+     * Returns how many events were recorded in all, the ones before this record included.
+     */
+    public long getTotalCount() {
+        return mTotalCount;
+    }
+
+    /**
+     * Returns how many events this record holds.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Moves to the next event and returns true, or returns false if there are no more.
+     */
+    public boolean next() {
+        if (mIndex == mCount) {
+            return false;
+        }
+        mIndex++;
+        long header = mBuffer.getLong();
+        mValue = mBuffer.getLong();
+        int ordinal = (int) (header >>> 16) & 0xFF;
+        mEvent = ordinal < EVENTS.length ? EVENTS[ordinal] : null;
+        mTick = header >>> 24;
+        mArg = (int) header & 0xFFFF;
+        return true;
+    }
+
+    /**
+     * Returns the kind of the current event, or null if it is newer than this reader.
+     */
+    public FlightEvent getEvent() {
+        return mEvent;
+    }
+
+    public long getTick() {
+        return mTick;
+    }
+
+    public int getArg() {
+        return mArg;
+    }
+
+    public long getValue() {
+        return mValue;
+    }
+}
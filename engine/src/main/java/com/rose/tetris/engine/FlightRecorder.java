@@ -0,0 +1,95 @@
+package com.rose.tetris.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Always-on record of the last few thousand {@link FlightEvent}s of a game, for working out what
+ * happened before a freeze or a wrong line clear. Events go into a fixed ring of longs, two per
+ * event, so recording one never allocates, blocks or formats anything and is safe from any thread;
+ * once the ring is full each event overwrites the oldest. Dumping while recording may catch an
+ * event half written.
+ * <p>
+ * {@link #dump(File)} writes the ring through a memory-mapped file that {@link FlightRecordReader}
+ * reads back. The file is a header of {@link #MAGIC}, {@link #VERSION}, how many events were ever
+ * recorded, how many follow and how many of those at the start were overwritten during the dump,
+ * then the events oldest first. An event is two longs: the tick shifted left by 24 bits or'ed with
+ * the event ordinal shifted left by 16 and a 16-bit argument, then a value.
+ */
+public final class FlightRecorder {
+    public static final int MAGIC = 0x54464C52;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4;
+    public static final int EVENT_SIZE = 16;
+    /**
+     * Or'ed with the input ordinal of an {@link FlightEvent#INPUT} that changed the game.
+     */
+    public static final int ACCEPTED = 0x100;
+
+    private final long[] mEvents;
+    private final int mMask;
+    private final AtomicLong mCount = new AtomicLong();
+
+    /**
+     * @param capacity how many events to keep, a power of two
+     */
+    public FlightRecorder(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity has to be a power of two: " + capacity);
+        }
+        mEvents = new long[capacity * 2];
+        mMask = capacity - 1;
+    }
+
+    public int getCapacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * Returns how many events were ever recorded, including the overwritten ones.
+     */
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * Records {@code event} as happening on {@code tick}, with the low 16 bits of {@code arg} and
+     * {@code value} as the event describes.
+     */
+    public void record(FlightEvent event, long tick, int arg, long value) {
+        int i = (int) (mCount.getAndIncrement() & mMask) << 1;
+        mEvents[i] = tick << 24 | (long) event.ordinal() << 16 | (arg & 0xFFFF);
+        mEvents[i + 1] = value;
+    }
+
+    /**
+     * Replaces {@code file} with the events kept so far. Recording goes on meanwhile.
+     */
+    public synchronized void dump(File file) throws IOException {
+        long end = mCount.get();
+        long start = Math.max(0, end - getCapacity());
+        int count = (int) (end - start);
+        int size = HEADER_SIZE + count * EVENT_SIZE;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(size);
+            MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.position(HEADER_SIZE);
+            for (long sequence = start; sequence < end; sequence++) {
+                int i = (int) (sequence & mMask) << 1;
+                buffer.putLong(mEvents[i]).putLong(mEvents[i + 1]);
+            }
+            // Events recorded while copying took the places of the oldest ones.
+            long overwritten = Math.min(count, Math.max(0, mCount.get() - getCapacity() - start));
+            buffer.putInt(0, MAGIC)
+                    .putInt(4, VERSION)
+                    .putLong(8, end)
+                    .putInt(16, count)
+                    .putInt(20, (int) overwritten);
+            buffer.force();
+        }
+    }
+}
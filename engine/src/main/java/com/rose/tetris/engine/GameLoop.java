@@ -0,0 +1,155 @@
+package com.rose.tetris.engine;
+
+/**
+ * Fixed-timestep {@link Scheduler} backed by one long-lived thread. Elapsed time goes into an
+ * accumulator that is drained in whole timesteps, and the thread sleeps until the timestep its
+ * task asked for instead of waking up every frame. {@link #stop()} parks the thread until the
+ * next {@link #start(long, Task)}, so pausing and resuming never leaves a second loop running;
+ * {@link #release()} ends it.
+ * <p>
+ * When the thread wakes up more than {@link #MAX_CATCH_UP_STEPS} timesteps past its deadline the
+ * extra time is dropped rather than replayed, which bounds how far the game can jump in one
+ * wake-up.
+ */
+public class GameLoop implements Scheduler {
+    public static final int MAX_CATCH_UP_STEPS = 4;
+
+    private final Clock mClock;
+    private final Object mLock = new Object();
+    private Thread mThread;
+    private Task mTask;
+    private long mStepNanos;
+    private boolean mIsRunning;
+    private boolean mIsWakeRequested;
+    private int mGeneration;
+
+    private final Histogram mLateness;
+
+    public GameLoop(Clock clock) {
+        this(clock, new Histogram());
+    }
+
+    /**
+     * @param lateness where to record how late, in nanoseconds, the thread wakes up for each
+     *                 timestep it runs
+     */
+    public GameLoop(Clock clock, Histogram lateness) {
+        mClock = clock;
+        mLateness = lateness;
+    }
+
+    @Override
+    public void start(long stepNanos, Task task) {
+        synchronized (mLock) {
+            mTask = task;
+            mStepNanos = stepNanos;
+            mIsRunning = true;
+            mGeneration++;
+            if (mThread == null) {
+                mThread = new Thread(this::loop, "GameLoop");
+                mThread.setDaemon(true);
+                mThread.start();
+            }
+            mLock.notifyAll();
+        }
+    }
+
+    @Override
+    public void stop() {
+        synchronized (mLock) {
+            mIsRunning = false;
+            mLock.notifyAll();
+        }
+    }
+
+    @Override
+    public void release() {
+        Thread thread;
+        synchronized (mLock) {
+            thread = mThread;
+            mThread = null;
+            mIsRunning = false;
+            mLock.notifyAll();
+        }
+        if (thread == null || thread == Thread.currentThread()) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void wake() {
+        synchronized (mLock) {
+            mIsWakeRequested = true;
+            mLock.notifyAll();
+        }
+    }
+
+    public Histogram getLateness() {
+        return mLateness;
+    }
+
+    private void loop() {
+        try {
+            while (true) {
+                Task task;
+                long stepNanos;
+                int generation;
+                synchronized (mLock) {
+                    while (!mIsRunning && mThread == Thread.currentThread()) {
+                        mLock.wait();
+                    }
+                    if (mThread != Thread.currentThread()) {
+                        return;
+                    }
+                    task = mTask;
+                    stepNanos = mStepNanos;
+                    generation = mGeneration;
+                }
+                run(task, stepNanos, generation);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(Task task, long stepNanos, int generation) throws InterruptedException {
+        long previous = mClock.nanoTime();
+        long accumulator = 0;
+        // Like the old loop, the first timestep runs one step after starting.
+        int stepsUntilWork = 1;
+        while (true) {
+            long deadline = previous + stepsUntilWork * stepNanos - accumulator;
+            boolean isWoken;
+            synchronized (mLock) {
+                long sleepNanos;
+                while (mIsRunning && mGeneration == generation && !mIsWakeRequested
+                        && (sleepNanos = deadline - mClock.nanoTime()) > 0) {
+                    mLock.wait(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+                }
+                if (!mIsRunning || mGeneration != generation) {
+                    return;
+                }
+                isWoken = mIsWakeRequested;
+                mIsWakeRequested = false;
+            }
+            long now = mClock.nanoTime();
+            accumulator += now - previous;
+            previous = now;
+            int steps = (int) Math.min(accumulator / stepNanos, stepsUntilWork + MAX_CATCH_UP_STEPS);
+            if (steps == 0 && !isWoken) {
+                continue;
+            }
+            accumulator = Math.min(accumulator - steps * stepNanos, stepNanos - 1);
+
+            if (steps >= stepsUntilWork) {
+                mLateness.record(now - deadline);
+            }
+            stepsUntilWork = Math.max(1, task.run(steps));
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.rose.tetris.engine;
+
+/**
+ * Seeded SplitMix64 generator. Unlike {@link java.util.Random} its whole state is one long that
+ * can be read back and restored, so a game can be replayed or resumed from any point.
+ */
+public final class GameRandom {
+    private long mState;
+
+    public GameRandom(long seed) {
+        mState = seed;
+    }
+
+    public long getState() {
+        return mState;
+    }
+
+    public void setState(long state) {
+        mState = state;
+    }
+
+    public long nextLong() {
+        long z = (mState += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public int nextInt(int bound) {
+        return (int) ((nextLong() >>> 1) % bound);
+    }
+}
@@ -0,0 +1,75 @@
+package com.rose.tetris.engine;
+
+/**
+ * How fast the falling brick drops at each level, as a number of rows every number of frames: one
+ * row every 25 frames, 3 rows every 2 frames, or {@link #MAX_ROWS} rows every frame to drop it to
+ * the bottom the frame it spawns. Levels past the end of the table keep the last value.
+ */
+public final class GravityCurve {
+    /**
+     * The most rows or frames a level can have, more rows than any board is tall.
+     */
+    public static final int MAX_ROWS = 1 << 20;
+
+    // One row a frame is reached at level 13; the levels after it drop several rows a frame, the
+    // last one all the way down.
+    public static final GravityCurve DEFAULT = new GravityCurve(
+            new int[]{1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 3, 2, 3, 5, MAX_ROWS},
+            new int[]{25, 22, 19, 16, 13, 11, 9, 7, 6, 5, 4, 3, 2, 1, 2, 1, 1, 1, 1});
+
+    private final int[] mRows;
+    private final int[] mFrames;
+
+    /**
+     * Creates a curve dropping one row every {@code framesPerRow[level]} frames.
+     */
+    public GravityCurve(int... framesPerRow) {
+        this(ones(framesPerRow.length), framesPerRow);
+    }
+
+    /**
+     * Creates a curve dropping {@code rows[level]} rows every {@code frames[level]} frames, each
+     * kept between 1 and {@link #MAX_ROWS}.
+     */
+    public GravityCurve(int[] rows, int[] frames) {
+        if (rows.length == 0 || rows.length != frames.length) {
+            throw new IllegalArgumentException("Gravity curve needs as many rows as frames, at least one level");
+        }
+        mRows = new int[rows.length];
+        mFrames = new int[frames.length];
+        for (int i = 0; i < rows.length; i++) {
+            mRows[i] = Math.min(Math.max(1, rows[i]), MAX_ROWS);
+            mFrames[i] = Math.min(Math.max(1, frames[i]), MAX_ROWS);
+        }
+    }
+
+    private static int[] ones(int length) {
+        int[] ones = new int[length];
+        for (int i = 0; i < length; i++) {
+            ones[i] = 1;
+        }
+        return ones;
+    }
+
+    /**
+     * Returns how many levels the table lists, every later level using the last one.
+     */
+    public int getLevelCount() {
+        return mRows.length;
+    }
+
+    /**
+     * Returns how many rows the brick drops every {@link #getFrames(int)} frames at {@code level}.
+     */
+    public int getRows(int level) {
+        return mRows[clamp(level)];
+    }
+
+    public int getFrames(int level) {
+        return mFrames[clamp(level)];
+    }
+
+    private int clamp(int level) {
+        return Math.min(Math.max(level, 0), mRows.length - 1);
+    }
+}
@@ -0,0 +1,143 @@
+package com.rose.tetris.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size histogram of non-negative values, usually nanoseconds. Each power of two is split
+ * into {@link #SUB_BUCKETS} linear buckets, so a value is kept to within 12.5% and the whole
+ * range of {@code long} fits in a few hundred counters. Recording never allocates or blocks and is
+ * safe from any thread; reading while recording may see a recording half done.
+ */
+public final class Histogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * Records {@code value}, counting negative values as 0.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        mCounts.incrementAndGet(indexOf(value));
+        mCount.incrementAndGet();
+        mSum.addAndGet(value);
+        raiseMax(value);
+    }
+
+    /**
+     * Adds everything recorded in {@code histogram} to this one.
+     */
+    public void add(Histogram histogram) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = histogram.mCounts.get(i);
+            if (count != 0) {
+                mCounts.addAndGet(i, count);
+            }
+        }
+        mCount.addAndGet(histogram.mCount.get());
+        mSum.addAndGet(histogram.mSum.get());
+        raiseMax(histogram.mMax.get());
+    }
+
+    private void raiseMax(long value) {
+        long max;
+        while (value > (max = mMax.get()) && !mMax.compareAndSet(max, value)) {
+            // Another thread raised the maximum in between, try again against the new one.
+        }
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public long getMax() {
+        return mMax.get();
+    }
+
+    public long getMean() {
+        long count = mCount.get();
+        return count == 0 ? 0 : mSum.get() / count;
+    }
+
+    /**
+     * Returns an upper bound of the value below which {@code percentile} percent of the recorded
+     * values fall, or 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = mCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) {
+                return Math.min(getLowestValue(i + 1) - 1, getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Copies the count of every bucket into {@code counts}, which needs {@link #getBucketCount()}
+     * entries, so that a snapshot can be exported without allocating.
+     */
+    public void copyCounts(long[] counts) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = mCounts.get(i);
+        }
+    }
+
+    public static int getBucketCount() {
+        return BUCKETS;
+    }
+
+    /**
+     * Returns the smallest value counted in bucket {@code index}.
+     */
+    public static long getLowestValue(int index) {
+        int shift = index / SUB_BUCKETS - 1;
+        if (shift <= 0) {
+            return index;
+        }
+        if (shift + SUB_BUCKET_BITS >= 63) {
+            return Long.MAX_VALUE;
+        }
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mCounts.set(i, 0);
+        }
+        mCount.set(0);
+        mSum.set(0);
+        mMax.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "n=" + getCount()
+                + " mean=" + getMean()
+                + " p50=" + getValueAtPercentile(50)
+                + " p99=" + getValueAtPercentile(99)
+                + " max=" + getMax();
+    }
+}
@@ -0,0 +1,5 @@
+package com.rose.tetris.engine;
+
+public enum Input {
+    LEFT, RIGHT, ROTATE, SOFT_DROP, HARD_DROP, UNDO
+}
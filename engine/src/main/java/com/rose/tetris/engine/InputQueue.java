@@ -0,0 +1,83 @@
+package com.rose.tetris.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue of timestamped {@link Input}s with any number of producers and a single
+ * consumer (Vyukov's bounded queue). Producers are the threads that receive player input; the
+ * consumer is the game thread, which drains the queue once per tick so that it is the only thread
+ * that ever touches the engine. Neither side allocates or blocks.
+ */
+public final class InputQueue {
+    private static final Input[] INPUTS = Input.values();
+
+    public interface Sink {
+        void accept(Input input, long timestampNanos);
+    }
+
+    private final int mMask;
+    private final AtomicLongArray mSequences;
+    private final int[] mInputs;
+    private final long[] mTimestamps;
+    private final AtomicLong mTail = new AtomicLong();
+    private long mHead;
+
+    /**
+     * @param capacity maximum number of queued inputs, rounded up to a power of two
+     */
+    public InputQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        mMask = size - 1;
+        mSequences = new AtomicLongArray(size);
+        mInputs = new int[size];
+        mTimestamps = new long[size];
+        for (int i = 0; i < size; i++) {
+            mSequences.set(i, i);
+        }
+    }
+
+    /**
+     * Producer side, safe from any thread. Returns false, dropping the input, if the queue is full.
+     */
+    public boolean offer(Input input, long timestampNanos) {
+        long position = mTail.get();
+        while (true) {
+            int index = (int) (position & mMask);
+            long difference = mSequences.get(index) - position;
+            if (difference == 0) {
+                if (mTail.compareAndSet(position, position + 1)) {
+                    mInputs[index] = input.ordinal();
+                    mTimestamps[index] = timestampNanos;
+                    mSequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = mTail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = mTail.get();
+            }
+        }
+    }
+
+    /**
+     * Consumer side: passes every queued input to {@code sink} in the order they were queued and
+     * returns how many there were.
+     */
+    public int drain(Sink sink) {
+        int count = 0;
+        while (true) {
+            int index = (int) (mHead & mMask);
+            if (mSequences.get(index) != mHead + 1) {
+                return count;
+            }
+            Input input = INPUTS[mInputs[index]];
+            long timestampNanos = mTimestamps[index];
+            mSequences.lazySet(index, mHead + mMask + 1);
+            mHead++;
+            count++;
+            sink.accept(input, timestampNanos);
+        }
+    }
+}
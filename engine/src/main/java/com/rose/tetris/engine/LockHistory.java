@@ -0,0 +1,115 @@
+package com.rose.tetris.engine;
+
+/**
+ * The game as it was right after each of the last few bricks settled, oldest first, for undo and
+ * rewinding. The history is a ring: once full, recording a lock drops the oldest one, and going
+ * back to a stored lock drops the newer ones.
+ * <p>
+ * A lock point does not keep the board. It keeps what its brick changed: the few rows the brick
+ * landed in as they were before, and how many lines it cleared. Going back takes the newer bricks
+ * back one at a time, which only writes their rows and moves the rows above a cleared line back
+ * up, so going back {@code k} locks costs about what playing them did rather than a constant.
+ * In exchange every lock point is allocated with the history and written over when its slot comes
+ * round again, so recording a lock copies at most {@link BrickType#SIZE} rows and allocates
+ * nothing.
+ */
+final class LockHistory {
+    static final class LockPoint {
+        long randomState;
+        int score;
+        int lines;
+        int combo;
+        boolean isBackToBack;
+        final BrickQueue upcomingBricks = new BrickQueue();
+        final int[] brickCounts = new int[BrickQueue.BAG_SIZE];
+
+        // Taking the brick back: rows top to bottom and the tops of the columns from x on as they
+        // were before it settled, the stack top then, and the lines it cleared.
+        final long[] rows;
+        final int[] columnTops = new int[BrickType.SIZE];
+        int x;
+        int top;
+        int bottom;
+        int stackTop;
+        int clearedLines;
+
+        LockPoint(int wordCount) {
+            rows = new long[BrickType.SIZE * wordCount];
+        }
+
+        void copyFrom(LockPoint point) {
+            randomState = point.randomState;
+            score = point.score;
+            lines = point.lines;
+            combo = point.combo;
+            isBackToBack = point.isBackToBack;
+            upcomingBricks.copyFrom(point.upcomingBricks);
+            System.arraycopy(point.brickCounts, 0, brickCounts, 0, brickCounts.length);
+            System.arraycopy(point.rows, 0, rows, 0, rows.length);
+            System.arraycopy(point.columnTops, 0, columnTops, 0, columnTops.length);
+            x = point.x;
+            top = point.top;
+            bottom = point.bottom;
+            stackTop = point.stackTop;
+            clearedLines = point.clearedLines;
+        }
+    }
+
+    private final LockPoint[] mRing;
+    private int mHead;
+    private int mSize;
+
+    LockHistory(int capacity, int wordCount) {
+        mRing = new LockPoint[capacity];
+        for (int i = 0; i < capacity; i++) {
+            mRing[i] = new LockPoint(wordCount);
+        }
+    }
+
+    int getCapacity() {
+        return mRing.length;
+    }
+
+    int getSize() {
+        return mSize;
+    }
+
+    void clear() {
+        mHead = 0;
+        mSize = 0;
+    }
+
+    /**
+     * Returns the {@code index}th stored lock, 0 being the oldest.
+     */
+    LockPoint get(int index) {
+        return mRing[(mHead + index) % mRing.length];
+    }
+
+    /**
+     * Drops every lock after the {@code index}th, which becomes the newest.
+     */
+    void truncate(int index) {
+        mSize = index + 1;
+    }
+
+    /**
+     * Makes room for a new lock, dropping the oldest one if the history is full, and returns it
+     * to be filled in.
+     */
+    LockPoint add() {
+        if (mSize == mRing.length) {
+            mHead = (mHead + 1) % mRing.length;
+        } else {
+            mSize++;
+        }
+        return get(mSize - 1);
+    }
+
+    void copyFrom(LockHistory history) {
+        clear();
+        for (int i = Math.max(0, history.mSize - mRing.length); i < history.mSize; i++) {
+            add().copyFrom(history.get(i));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.rose.tetris.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plays back a recording made by {@link ReplayRecorder} on its own engine, as fast as the CPU
+ * goes. Every {@link #KEYFRAME_INTERVAL} ticks it keeps a copy of the engine the first time it
+ * passes there, so after one pass {@link #seek(long)} to any tick re-simulates at most that many
+ * ticks, backwards as well as forwards.
+ * <p>
+ * The engine is at tick {@code t} once it ran {@code t} ticks and applied the inputs recorded on
+ * tick {@code t}.
+ */
+public final class ReplayPlayer {
+    public static final int KEYFRAME_INTERVAL = 512;
+    private static final Input[] INPUTS = Input.values();
+
+    private static final class Keyframe {
+        final TetrisEngine engine;
+        final int position;
+        final long eventTick;
+        final int eventCode;
+
+        Keyframe(TetrisEngine engine, int position, long eventTick, int eventCode) {
+            this.engine = engine;
+            this.position = position;
+            this.eventTick = eventTick;
+            this.eventCode = eventCode;
+        }
+    }
+
+    private final byte[] mReplay;
+    private final TetrisEngine mEngine;
+    private final long mEndTick;
+    private final List<Keyframe> mKeyframes = new ArrayList<>();
+
+    // The next event not applied yet: its offset in mReplay, tick and code.
+    private int mPosition;
+    private long mEventTick;
+    private int mEventCode;
+
+    public ReplayPlayer(byte[] replay) {
+        mReplay = replay;
+        if (readByte() != ReplayRecorder.VERSION) {
+            throw new IllegalArgumentException("Unsupported replay version");
+        }
+        int width = (int) readVarint();
+        int height = (int) readVarint();
+        long seed = 0;
+        for (int i = 0; i < 8; i++) {
+            seed |= (long) readByte() << (i * 8);
+        }
+        int levels = (int) readVarint();
+        int[] rows = new int[levels];
+        int[] frames = new int[levels];
+        for (int i = 0; i < levels; i++) {
+            rows[i] = (int) readVarint();
+            frames[i] = (int) readVarint();
+        }
+        int historyCapacity = (int) readVarint();
+        mEngine = new TetrisEngine(width, height, seed);
+        mEngine.setGravityCurve(new GravityCurve(rows, frames));
+        // Undo has to see the same lock points as when recording, from the start of the game.
+        mEngine.setHistoryCapacity(historyCapacity);
+        mEngine.newGame(seed);
+
+        int eventsStart = mPosition;
+        mEventTick = 0;
+        do {
+            readEvent();
+        } while (mEventCode != ReplayRecorder.END);
+        mEndTick = mEventTick;
+
+        mPosition = eventsStart;
+        mEventTick = 0;
+        readEvent();
+        applyEvents();
+        addKeyframe();
+    }
+
+    public TetrisEngine getEngine() {
+        return mEngine;
+    }
+
+    public long getTick() {
+        return mEngine.getTick();
+    }
+
+    public long getEndTick() {
+        return mEndTick;
+    }
+
+    /**
+     * Moves the engine to {@code tick}, clamped to the recording, or to the tick the game ended
+     * on if that is earlier.
+     */
+    public void seek(long tick) {
+        long target = Math.max(0, Math.min(tick, mEndTick));
+        int index = (int) Math.min(target / KEYFRAME_INTERVAL, mKeyframes.size() - 1);
+        Keyframe keyframe = mKeyframes.get(index);
+        if (target < mEngine.getTick() || keyframe.engine.getTick() > mEngine.getTick()) {
+            mEngine.copyFrom(keyframe.engine);
+            mPosition = keyframe.position;
+            mEventTick = keyframe.eventTick;
+            mEventCode = keyframe.eventCode;
+        }
+        while (mEngine.getTick() < target && !mEngine.isGameOver()) {
+            mEngine.tick();
+            applyEvents();
+            if (mEngine.getTick() == (long) mKeyframes.size() * KEYFRAME_INTERVAL) {
+                addKeyframe();
+            }
+        }
+    }
+
+    private void applyEvents() {
+        while (mEventCode != ReplayRecorder.END && mEventTick == mEngine.getTick()) {
+            mEngine.apply(INPUTS[mEventCode]);
+            readEvent();
+        }
+    }
+
+    private void addKeyframe() {
+        TetrisEngine engine = new TetrisEngine(mEngine.getWidth(), mEngine.getHeight(), 0);
+        engine.copyFrom(mEngine);
+        mKeyframes.add(new Keyframe(engine, mPosition, mEventTick, mEventCode));
+    }
+
+    private void readEvent() {
+        long value = readVarint();
+        mEventTick += value >>> ReplayRecorder.INPUT_BITS;
+        mEventCode = (int) (value & ReplayRecorder.END);
+        if (mEventCode != ReplayRecorder.END && mEventCode >= INPUTS.length) {
+            throw new IllegalArgumentException("Unknown input in replay: " + mEventCode);
+        }
+    }
+
+    private long readVarint() {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private int readByte() {
+        if (mPosition >= mReplay.length) {
+            throw new IllegalArgumentException("Truncated replay");
+        }
+        return mReplay[mPosition++] & 0xFF;
+    }
+}
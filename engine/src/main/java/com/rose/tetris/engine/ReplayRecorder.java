@@ -0,0 +1,110 @@
+package com.rose.tetris.engine;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Records a game compactly enough to keep every one: since the engine is deterministic, the board
+ * size, gravity curve, undo history capacity and seed it started from plus each input and the tick
+ * it was applied on are all it takes to play it again with a {@link ReplayPlayer}.
+ * <p>
+ * The format is a version byte, then the board width and height, the seed as 8 bytes, the number
+ * of gravity levels, the rows and frames of each and the undo history capacity. Each input follows
+ * as one varint holding the ticks since the previous input shifted left by {@link #INPUT_BITS}
+ * bits, or'ed with the ordinal of the {@link Input}. An input code of {@link #END} closes the stream, its tick being the last
+ * tick of the recording. An input on the same tick or the next few ticks costs one byte.
+ */
+public final class ReplayRecorder {
+    static final int VERSION = 4;
+    static final int INPUT_BITS = 3;
+    static final int END = (1 << INPUT_BITS) - 1;
+
+    private byte[] mBuffer = new byte[256];
+    private int mLength;
+    private long mLastTick;
+
+    /**
+     * Starts a new recording of {@code engine}, which has to be at the start of a game.
+     */
+    public void start(TetrisEngine engine) {
+        mLength = 0;
+        mLastTick = engine.getTick();
+        writeByte(VERSION);
+        writeVarint(engine.getWidth());
+        writeVarint(engine.getHeight());
+        long seed = engine.getSeed();
+        for (int i = 0; i < 8; i++) {
+            writeByte((int) (seed >>> (i * 8)));
+        }
+        GravityCurve gravityCurve = engine.getGravityCurve();
+        writeVarint(gravityCurve.getLevelCount());
+        for (int i = 0; i < gravityCurve.getLevelCount(); i++) {
+            writeVarint(gravityCurve.getRows(i));
+            writeVarint(gravityCurve.getFrames(i));
+        }
+        writeVarint(engine.getHistoryCapacity());
+    }
+
+    /**
+     * Records {@code input} as applied after {@code tick} ticks. Ticks never go backwards.
+     */
+    public void record(long tick, Input input) {
+        writeVarint(((tick - mLastTick) << INPUT_BITS) | input.ordinal());
+        mLastTick = tick;
+    }
+
+    /**
+     * Returns the recording so far, ending at {@code endTick}. Recording can go on afterwards.
+     */
+    public byte[] toByteArray(long endTick) {
+        int length = mLength;
+        writeVarint((Math.max(0, endTick - mLastTick) << INPUT_BITS) | END);
+        byte[] replay = Arrays.copyOf(mBuffer, mLength);
+        mLength = length;
+        return replay;
+    }
+
+    /**
+     * Returns how many bytes {@link #writeState(ByteBuffer)} writes.
+     */
+    public int getStateSize() {
+        return 8 + 4 + mLength;
+    }
+
+    /**
+     * Writes the recording so far, so that it can go on in another process after
+     * {@link #readState(ByteBuffer)}.
+     */
+    public void writeState(ByteBuffer buffer) {
+        buffer.putLong(mLastTick).putInt(mLength).put(mBuffer, 0, mLength);
+    }
+
+    public void readState(ByteBuffer buffer) {
+        long lastTick = buffer.getLong();
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Not a recording");
+        }
+        if (length > mBuffer.length) {
+            mBuffer = new byte[Integer.highestOneBit(length) * 2];
+        }
+        buffer.get(mBuffer, 0, length);
+        mLength = length;
+        mLastTick = lastTick;
+    }
+
+    private void writeVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        writeByte((int) value);
+    }
+
+    private void writeByte(int value) {
+        if (mLength == mBuffer.length) {
+            mBuffer = Arrays.copyOf(mBuffer, mLength * 2);
+        }
+        mBuffer[mLength++] = (byte) value;
+    }
+}
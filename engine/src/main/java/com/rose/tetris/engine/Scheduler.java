@@ -0,0 +1,34 @@
+package com.rose.tetris.engine;
+
+/**
+ * Drives the game loop in fixed timesteps. The Android adapter uses a {@link GameLoop}; headless
+ * callers can skip the scheduler altogether and call {@link TetrisEngine#tick()} themselves.
+ */
+public interface Scheduler {
+    interface Task {
+        /**
+         * Runs the {@code steps} timesteps that have elapsed since the previous call, which may be 0
+         * after {@link #wake()}, and returns how many timesteps from now the task next has
+         * something to do.
+         */
+        int run(int steps);
+    }
+
+    /**
+     * Starts running {@code task} in timesteps of {@code stepNanos} until {@link #stop()} is called.
+     */
+    void start(long stepNanos, Task task);
+
+    void stop();
+
+    /**
+     * Stops for good and ends whatever thread runs the task, once it has returned.
+     */
+    void release();
+
+    /**
+     * Runs the task as soon as possible, even if no timestep has elapsed, for example because
+     * there is new input to apply. The task is then called with {@code steps} set to 0.
+     */
+    void wake();
+}
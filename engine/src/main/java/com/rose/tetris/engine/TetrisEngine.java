@@ -0,0 +1,851 @@
+package com.rose.tetris.engine;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The Tetris rules without any Android dependency. The engine is single-threaded and does not
+ * keep time itself: one {@link #tick()} is one frame and the falling brick drops
+ * {@link #getGravityRows()} rows every {@link #getGravityFrames()} frames, which depend on the
+ * level through a {@link GravityCurve}. The level goes up every {@link #LINES_PER_LEVEL} cleared
+ * lines. Everything random comes from a {@link GameRandom} seeded in {@link #newGame(long)}, so the
+ * same seed and the same inputs on the same ticks always play the same game.
+ * <p>
+ * A brick that comes to rest on the stack settles after {@link #LOCK_DELAY} frames. Moving or
+ * turning it starts the delay over, up to {@link #MAX_LOCK_RESETS} times until it reaches a row
+ * lower than it has been, so a brick cannot be kept up forever. A new brick spawns when gravity
+ * first moves after one settled.
+ * <p>
+ * Bricks come from a {@link BrickQueue} of shuffled bags of all seven types, and the next
+ * {@link #PREVIEW_SIZE} can be seen ahead.
+ * <p>
+ * Clearing 1 to 4 lines with one brick scores 100, 300, 500 or 800 points times the level plus
+ * one. A clear of 4 lines right after another one, with no smaller clear in between, scores half
+ * as much again, and every brick in a row that clears lines after the first adds 50 points times
+ * the combo length and the level plus one.
+ * <p>
+ * The board can be any size from {@link BrickType#SIZE} columns and rows up. Apart from a new
+ * game, the work of a tick grows with the rows the falling brick and cleared lines touch, not with
+ * the size of the board, so very large boards stay cheap to play.
+ */
+public class TetrisEngine {
+    public static final int DEFAULT_WIDTH = 10;
+    public static final int DEFAULT_HEIGHT = 15;
+    public static final int LINES_PER_LEVEL = 10;
+    public static final int PREVIEW_SIZE = 6;
+    public static final int LOCK_DELAY = 30;
+    public static final int MAX_LOCK_RESETS = 15;
+    private static final long[] NO_ROWS = new long[BrickType.SIZE];
+    private static final int STATE_MAGIC = 0x54545253;
+    private static final int STATE_VERSION = 5;
+    private static final int STATE_HEADER_SIZE = 4 * 4 + 3 * 8 + 7 * 4 + 8 + 2 * 4 + BrickQueue.CAPACITY + 1
+            + BrickQueue.BAG_SIZE * 4;
+    private static final int[] LINE_SCORES = {0, 100, 300, 500, 800};
+    private static final int COMBO_SCORE = 50;
+
+    public interface Listener {
+        /**
+         * Called once for every brick that settles, before {@link #onLinesCleared(int, int)}.
+         */
+        void onBrickLocked(BrickType type);
+
+        /**
+         * Called once for every brick that clears lines, with how many it cleared and the score
+         * after them.
+         */
+        void onLinesCleared(int lines, int score);
+
+        void onBrickSpawned(BrickType type);
+
+        void onGameOver();
+    }
+
+    private final BitBoard mBoard;
+    private final int mSpawnX;
+    private final GameRandom mRandom;
+    private Listener mListener;
+
+    private long mSeed;
+    private long mTick;
+    private GravityCurve mGravityCurve = GravityCurve.DEFAULT;
+    // Gravity not yet turned into rows: a row drops for every getGravityFrames() of it.
+    private int mGravityCredit;
+    private int mScore;
+    private int mLines;
+    // Bricks in a row that cleared lines, minus one, or -1 if the last brick cleared nothing.
+    private int mCombo;
+    private boolean mIsBackToBack;
+    private boolean mIsGameOver;
+    private final BrickQueue mUpcomingBricks = new BrickQueue();
+    // Bricks spawned this game, by ordinal.
+    private final int[] mBrickCounts = new int[BrickQueue.BAG_SIZE];
+    // The lock points undo can go back to, or null if undo is off.
+    private LockHistory mHistory;
+
+    // The falling brick: the row masks of its orientation, bit 0 being column mFallingX, which may be
+    // negative, and mFallingRows[0] being row mFallingTop. The masks belong to BrickType and are
+    // never written.
+    private long[] mFallingRows = NO_ROWS;
+    private BrickType mFallingType;
+    private int mFallingRotation;
+    private int mFallingX;
+    private int mFallingTop;
+    private boolean mHasFallingBrick;
+    // Where the falling brick would settle if dropped now, updated whenever it moves sideways or
+    // turns; falling does not change it.
+    private int mGhostTop;
+    // Frames the falling brick can still rest on the stack before it settles, how many times moving
+    // or turning it started that delay over, and the lowest its box has been, which allows as many
+    // again.
+    private int mLockFrames;
+    private int mLockResets;
+    private int mLowestTop;
+
+    // Rows that changed since the last clearDirty(), so a renderer only has to look at those.
+    private int mDirtyTop;
+    private int mDirtyBottom;
+    private boolean mIsFullyDirty;
+
+    public TetrisEngine(long seed) {
+        this(DEFAULT_WIDTH, DEFAULT_HEIGHT, new GameRandom(seed));
+    }
+
+    public TetrisEngine(GameRandom random) {
+        this(DEFAULT_WIDTH, DEFAULT_HEIGHT, random);
+    }
+
+    public TetrisEngine(int width, int height, long seed) {
+        this(width, height, new GameRandom(seed));
+    }
+
+    public TetrisEngine(int width, int height, GameRandom random) {
+        if (width < BrickType.SIZE || height < BrickType.SIZE) {
+            throw new IllegalArgumentException("Unsupported board size: " + width + "x" + height);
+        }
+        mBoard = new BitBoard(width, height);
+        mSpawnX = (width - BrickType.SIZE) / 2;
+        mRandom = random;
+        mSeed = random.getState();
+        newGame();
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    public void newGame(long seed) {
+        mSeed = seed;
+        mRandom.setState(seed);
+        newGame();
+    }
+
+    private void newGame() {
+        mTick = 0;
+        mGravityCredit = 0;
+        mScore = 0;
+        mLines = 0;
+        mCombo = -1;
+        mIsBackToBack = false;
+        mIsGameOver = false;
+        Arrays.fill(mBrickCounts, 0);
+        mBoard.clear();
+        clearFallingBrick();
+        mUpcomingBricks.clear();
+        mUpcomingBricks.fill(mRandom, PREVIEW_SIZE);
+        mIsFullyDirty = true;
+        if (mHistory != null) {
+            mHistory.clear();
+            recordLock(mHistory.add());
+        }
+    }
+
+    public int getWidth() {
+        return mBoard.getWidth();
+    }
+
+    public int getHeight() {
+        return mBoard.getHeight();
+    }
+
+    /**
+     * Returns how many 64-column words {@link #getRow(int, int)} splits a row into.
+     */
+    public int getWordCount() {
+        return mBoard.getWordCount();
+    }
+
+    public long getSeed() {
+        return mSeed;
+    }
+
+    public long getTick() {
+        return mTick;
+    }
+
+    public GravityCurve getGravityCurve() {
+        return mGravityCurve;
+    }
+
+    public void setGravityCurve(GravityCurve gravityCurve) {
+        mGravityCurve = gravityCurve;
+    }
+
+    /**
+     * Keeps the last {@code capacity} lock points, the start of a game counting as one, for
+     * {@link #rewind(int)} and {@link Input#UNDO}; 0 turns undo off. Recording starts with the
+     * next new game or brick that settles.
+     */
+    public void setHistoryCapacity(int capacity) {
+        mHistory = capacity > 0 ? new LockHistory(capacity, mBoard.getWordCount()) : null;
+    }
+
+    public int getHistoryCapacity() {
+        return mHistory == null ? 0 : mHistory.getCapacity();
+    }
+
+    /**
+     * Returns how many lock points {@link #rewind(int)} can go back to.
+     */
+    public int getHistorySize() {
+        return mHistory == null ? 0 : mHistory.getSize();
+    }
+
+    /**
+     * Goes back to lock point {@code index}, 0 being the oldest one kept, and forgets the ones
+     * after it. The board, score, preview and random generator are as they were right after that
+     * brick settled, with the next brick about to spawn; only the tick keeps counting. Takes time
+     * in the number of lock points gone back over. Returns false if there is no such lock point.
+     */
+    public boolean rewind(int index) {
+        if (index < 0 || index >= getHistorySize()) {
+            return false;
+        }
+        // The newer bricks are taken back newest first, each putting back only its own rows.
+        for (int i = getHistorySize() - 1; i > index; i--) {
+            LockHistory.LockPoint point = mHistory.get(i);
+            markDirty(Math.min(point.stackTop, point.top), point.bottom);
+            mBoard.undoLock(point.rows, point.columnTops, point.x, point.top, point.bottom,
+                    point.clearedLines, point.stackTop);
+        }
+        LockHistory.LockPoint point = mHistory.get(index);
+        mHistory.truncate(index);
+        mRandom.setState(point.randomState);
+        mScore = point.score;
+        mLines = point.lines;
+        mCombo = point.combo;
+        mIsBackToBack = point.isBackToBack;
+        mUpcomingBricks.copyFrom(point.upcomingBricks);
+        System.arraycopy(point.brickCounts, 0, mBrickCounts, 0, mBrickCounts.length);
+        mIsGameOver = false;
+        clearFallingBrick();
+        mGravityCredit = 0;
+        return true;
+    }
+
+    /**
+     * Fills in the game as it is now, right after a brick settled, as lock point {@code point}.
+     */
+    private void recordLock(LockHistory.LockPoint point) {
+        point.randomState = mRandom.getState();
+        point.score = mScore;
+        point.lines = mLines;
+        point.combo = mCombo;
+        point.isBackToBack = mIsBackToBack;
+        point.upcomingBricks.copyFrom(mUpcomingBricks);
+        System.arraycopy(mBrickCounts, 0, point.brickCounts, 0, mBrickCounts.length);
+    }
+
+    /**
+     * Returns how many rows the falling brick drops every {@link #getGravityFrames()} frames at the
+     * current level.
+     */
+    public int getGravityRows() {
+        return mGravityCurve.getRows(getLevel());
+    }
+
+    public int getGravityFrames() {
+        return mGravityCurve.getFrames(getLevel());
+    }
+
+    public int getLevel() {
+        return mLines / LINES_PER_LEVEL;
+    }
+
+    public int getLines() {
+        return mLines;
+    }
+
+    /**
+     * Returns how many more {@link #tick()}s it takes until the falling brick moves down or
+     * settles, which is as long as a loop driving the engine can sleep when there is no input.
+     */
+    public int getFramesUntilStep() {
+        if (isResting()) {
+            return mLockFrames;
+        }
+        int rows = getGravityRows();
+        // The credit can be ahead of a level that just got faster.
+        return Math.max(1, (getGravityFrames() - mGravityCredit + rows - 1) / rows);
+    }
+
+    /**
+     * Returns how many bricks of {@code type} were spawned this game.
+     */
+    public int getBrickCount(BrickType type) {
+        return mBrickCounts[type.ordinal()];
+    }
+
+    public int getScore() {
+        return mScore;
+    }
+
+    public boolean isGameOver() {
+        return mIsGameOver;
+    }
+
+    public BrickType getUpcomingBrick() {
+        return mUpcomingBricks.peek(0);
+    }
+
+    /**
+     * Returns the brick that spawns after {@code index} more, up to {@link #PREVIEW_SIZE} - 1.
+     */
+    public BrickType getUpcomingBrick(int index) {
+        return mUpcomingBricks.peek(index);
+    }
+
+    /**
+     * Returns the settled boxes of columns {@code 64 * word} to {@code 64 * word + 63} of row
+     * {@code y} as a mask, bit {@code x} being column {@code 64 * word + x}.
+     */
+    public long getRow(int y, int word) {
+        return mBoard.getRow(y, word);
+    }
+
+    /**
+     * Returns the cells of the falling brick in row {@code y}, in the same layout as
+     * {@link #getRow(int, int)}.
+     */
+    public long getFallingRow(int y, int word) {
+        int i = y - mFallingTop;
+        return i >= 0 && i < BrickType.SIZE ? BitBoard.toWord(mFallingRows[i], mFallingX, word) : 0;
+    }
+
+    /**
+     * Returns the first row of the box of the falling brick; its cells are in the
+     * {@link BrickType#SIZE} rows from there.
+     */
+    public int getFallingTop() {
+        return mFallingTop;
+    }
+
+    /**
+     * Returns the cells of the ghost brick, the falling brick where a hard drop would settle it, in
+     * row {@code y}, in the same layout as {@link #getRow(int, int)}. They are in the
+     * {@link BrickType#SIZE} rows from {@link #getGhostTop()}. The ghost is not part of the dirty
+     * rows, which would otherwise span everything between it and the falling brick.
+     */
+    public long getGhostRow(int y, int word) {
+        int i = y - mGhostTop;
+        return i >= 0 && i < BrickType.SIZE ? BitBoard.toWord(mFallingRows[i], mFallingX, word) : 0;
+    }
+
+    public int getGhostTop() {
+        return mGhostTop;
+    }
+
+    /**
+     * Returns true if the whole board may have changed since the last {@link #clearDirty()}, which
+     * happens on a new game. Cleared rows only mark the rows from the top of the stack down to
+     * them.
+     */
+    public boolean isFullyDirty() {
+        return mIsFullyDirty;
+    }
+
+    /**
+     * Returns the first row that changed since the last {@link #clearDirty()}. Nothing changed if
+     * it is greater than {@link #getDirtyBottom()}.
+     */
+    public int getDirtyTop() {
+        return mDirtyTop;
+    }
+
+    public int getDirtyBottom() {
+        return mDirtyBottom;
+    }
+
+    public void clearDirty() {
+        mDirtyTop = mBoard.getHeight();
+        mDirtyBottom = -1;
+        mIsFullyDirty = false;
+    }
+
+    private void markDirty(int top, int bottom) {
+        int height = mBoard.getHeight();
+        if (bottom < 0 || top >= height) {
+            return;
+        }
+        mDirtyTop = Math.min(mDirtyTop, Math.max(top, 0));
+        mDirtyBottom = Math.max(mDirtyBottom, Math.min(bottom, height - 1));
+    }
+
+    private void markFallingDirty() {
+        markDirty(mFallingTop, mFallingTop + BrickType.SIZE - 1);
+    }
+
+    BitBoard getBoard() {
+        return mBoard;
+    }
+
+    /**
+     * Replaces the falling brick with {@code type} in its spawn orientation, its 4x4 box placed with
+     * the top left corner at ({@code x}, {@code top}).
+     */
+    void placeFallingBrick(BrickType type, int x, int top) {
+        setFallingBrick(type, 0, x, top);
+        startLockDelay();
+        mIsFullyDirty = true;
+    }
+
+    private void setFallingBrick(BrickType type, int rotation, int x, int top) {
+        mFallingRows = type.rotations[rotation];
+        mFallingType = type;
+        mFallingRotation = rotation;
+        mFallingX = x;
+        mFallingTop = top;
+        mHasFallingBrick = true;
+        updateGhost();
+    }
+
+    private void updateGhost() {
+        mGhostTop = mFallingTop + mBoard.getDropDistance(
+                mFallingRows, mFallingType.bottoms[mFallingRotation], mFallingX, mFallingTop);
+    }
+
+    /**
+     * Overwrites the whole game state, random generator and undo history included, with a copy of
+     * {@code engine}.
+     */
+    void copyFrom(TetrisEngine engine) {
+        mBoard.copyFrom(engine.mBoard);
+        mRandom.setState(engine.mRandom.getState());
+        mSeed = engine.mSeed;
+        mTick = engine.mTick;
+        mGravityCurve = engine.mGravityCurve;
+        mGravityCredit = engine.mGravityCredit;
+        mScore = engine.mScore;
+        mLines = engine.mLines;
+        mCombo = engine.mCombo;
+        mIsBackToBack = engine.mIsBackToBack;
+        mIsGameOver = engine.mIsGameOver;
+        mUpcomingBricks.copyFrom(engine.mUpcomingBricks);
+        System.arraycopy(engine.mBrickCounts, 0, mBrickCounts, 0, mBrickCounts.length);
+        if (engine.mHistory == null) {
+            mHistory = null;
+        } else {
+            if (mHistory == null || mHistory.getCapacity() != engine.mHistory.getCapacity()) {
+                setHistoryCapacity(engine.mHistory.getCapacity());
+            }
+            mHistory.copyFrom(engine.mHistory);
+        }
+        mFallingRows = engine.mFallingRows;
+        mFallingType = engine.mFallingType;
+        mFallingRotation = engine.mFallingRotation;
+        mFallingX = engine.mFallingX;
+        mFallingTop = engine.mFallingTop;
+        mHasFallingBrick = engine.mHasFallingBrick;
+        mGhostTop = engine.mGhostTop;
+        mLockFrames = engine.mLockFrames;
+        mLockResets = engine.mLockResets;
+        mLowestTop = engine.mLowestTop;
+        mIsFullyDirty = true;
+    }
+
+    /**
+     * Returns how many bytes {@link #writeState(ByteBuffer)} writes, which only depends on the size
+     * of the board.
+     */
+    public int getStateSize() {
+        return STATE_HEADER_SIZE + mBoard.getHeight() * mBoard.getWordCount() * 8;
+    }
+
+    /**
+     * Writes the whole game state in a fixed layout: a header with the board size, seed, tick,
+     * random generator, gravity and lock delay, score, lines and the falling brick, then the
+     * queued bricks, the bricks spawned so far and every row of the board. The gravity curve, the
+     * listener and the undo history are not part of it.
+     */
+    public void writeState(ByteBuffer buffer) {
+        buffer.putInt(STATE_MAGIC)
+                .putInt(STATE_VERSION)
+                .putInt(mBoard.getWidth())
+                .putInt(mBoard.getHeight())
+                .putLong(mSeed)
+                .putLong(mTick)
+                .putLong(mRandom.getState())
+                .putInt(mGravityCredit)
+                .putInt(mLockFrames)
+                .putInt(mLockResets)
+                .putInt(mLowestTop)
+                .putInt(mScore)
+                .putInt(mLines)
+                .putInt(mCombo)
+                .put((byte) (mIsGameOver ? 1 : 0))
+                .put((byte) (mHasFallingBrick ? 1 : 0))
+                .put((byte) (mFallingType == null ? 0 : mFallingType.ordinal()))
+                .put((byte) mFallingRotation)
+                .put((byte) (mIsBackToBack ? 1 : 0))
+                .put((byte) 0)
+                .put((byte) 0)
+                .put((byte) 0)
+                .putInt(mFallingX)
+                .putInt(mFallingTop);
+        mUpcomingBricks.write(buffer);
+        for (int count : mBrickCounts) {
+            buffer.putInt(count);
+        }
+        mBoard.writeRows(buffer);
+    }
+
+    /**
+     * Replaces the game state with one written by {@link #writeState(ByteBuffer)} on a board of the
+     * same size, and starts the undo history over. Throws IllegalArgumentException, leaving the
+     * engine in an undefined state, if the buffer does not hold such a state.
+     */
+    public void readState(ByteBuffer buffer) {
+        if (buffer.getInt() != STATE_MAGIC || buffer.getInt() != STATE_VERSION) {
+            throw new IllegalArgumentException("Not a game state");
+        }
+        if (buffer.getInt() != mBoard.getWidth() || buffer.getInt() != mBoard.getHeight()) {
+            throw new IllegalArgumentException("Game state is for another board size");
+        }
+        BrickType[] types = BrickType.values();
+        mSeed = buffer.getLong();
+        mTick = buffer.getLong();
+        mRandom.setState(buffer.getLong());
+        mGravityCredit = buffer.getInt();
+        mLockFrames = buffer.getInt();
+        mLockResets = buffer.getInt();
+        mLowestTop = buffer.getInt();
+        mScore = buffer.getInt();
+        mLines = buffer.getInt();
+        mCombo = buffer.getInt();
+        mIsGameOver = buffer.get() != 0;
+        boolean hasFallingBrick = buffer.get() != 0;
+        int fallingType = buffer.get();
+        int fallingRotation = buffer.get();
+        if (fallingType < 0 || fallingType >= types.length
+                || fallingRotation < 0 || fallingRotation >= BrickType.ROTATIONS) {
+            throw new IllegalArgumentException("Not a game state");
+        }
+        mIsBackToBack = buffer.get() != 0;
+        buffer.position(buffer.position() + 3);
+        int fallingX = buffer.getInt();
+        int fallingTop = buffer.getInt();
+        mUpcomingBricks.read(buffer);
+        for (int i = 0; i < mBrickCounts.length; i++) {
+            mBrickCounts[i] = buffer.getInt();
+        }
+        mBoard.readRows(buffer);
+        // After the rows, which the ghost depends on.
+        if (hasFallingBrick) {
+            setFallingBrick(types[fallingType], fallingRotation, fallingX, fallingTop);
+        } else {
+            clearFallingBrick();
+        }
+        mIsFullyDirty = true;
+        if (mHistory != null) {
+            mHistory.clear();
+        }
+    }
+
+    /**
+     * Advances the game by one frame: the falling brick drops all the rows gravity owes it at once,
+     * down to where it would land at most, and settles if it has rested for its lock delay. Returns
+     * true if the frame changed the board, which is when it needs to be redrawn.
+     */
+    public boolean tick() {
+        if (mIsGameOver) {
+            return false;
+        }
+        mTick++;
+        boolean isChanged = false;
+        if (!isResting()) {
+            int frames = getGravityFrames();
+            mGravityCredit += getGravityRows();
+            if (mGravityCredit < frames) {
+                return false;
+            }
+            int rows = mGravityCredit / frames;
+            mGravityCredit %= frames;
+            updateFallingPoints();
+            // The ghost is where the brick lands, so however far it drops takes no search.
+            fall(Math.min(rows, mGhostTop - mFallingTop));
+            if (!isResting()) {
+                return true;
+            }
+            // Landing counts as the first frame of resting.
+            isChanged = true;
+        }
+        if (--mLockFrames > 0) {
+            return isChanged;
+        }
+        lock();
+        return true;
+    }
+
+    /**
+     * Runs {@code frames} ticks. Returns true if any of them changed the board. The ticks before
+     * the next change only count down, so they are skipped in one go and catching up after a long
+     * stall costs no more than the changes in it.
+     */
+    public boolean advance(int frames) {
+        boolean isChanged = false;
+        while (frames > 0 && !mIsGameOver) {
+            int idle = Math.min(frames, getFramesUntilStep()) - 1;
+            mTick += idle;
+            if (isResting()) {
+                mLockFrames -= idle;
+            } else {
+                mGravityCredit += idle * getGravityRows();
+            }
+            isChanged |= tick();
+            frames -= idle + 1;
+        }
+        return isChanged;
+    }
+
+    /**
+     * Moves the falling brick one row down, or settles it and clears full rows if it is resting on
+     * the stack, without waiting for its lock delay. A new brick is spawned first if nothing is
+     * falling.
+     */
+    public void step() {
+        if (mIsGameOver) {
+            return;
+        }
+        updateFallingPoints();
+        if (isResting()) {
+            lock();
+        } else {
+            fall(1);
+        }
+    }
+
+    private boolean isResting() {
+        return mHasFallingBrick && mFallingTop == mGhostTop;
+    }
+
+    private void fall(int rows) {
+        markFallingDirty();
+        mFallingTop += rows;
+        markFallingDirty();
+        updateLockDelay(false);
+    }
+
+    /**
+     * Settles the falling brick where it is and clears the rows it fills, or ends the game if part
+     * of it is still above the board.
+     */
+    private void lock() {
+        if (isOutSide()) {
+            mIsGameOver = true;
+            if (mListener != null) {
+                mListener.onGameOver();
+            }
+            return;
+        }
+        int bottom = getFallingBottom();
+        LockHistory.LockPoint point = mHistory == null ? null : mHistory.add();
+        if (point != null) {
+            // What the brick is about to change, so that it can be taken back.
+            point.x = mFallingX;
+            point.top = Math.max(mFallingTop, 0);
+            point.bottom = bottom;
+            point.stackTop = mBoard.getStackTop();
+            mBoard.saveLock(point.rows, point.columnTops, point.x, point.top, bottom);
+        }
+        mBoard.merge(mFallingRows, mFallingX, mFallingTop);
+        markFallingDirty();
+        if (mListener != null) {
+            mListener.onBrickLocked(mFallingType);
+        }
+        // Only the rows of the brick can have become full.
+        int stackTop = mBoard.getStackTop();
+        int lines = mBoard.clearFullRows(mFallingTop, bottom);
+        if (lines > 0) {
+            markDirty(stackTop, bottom);
+            scoreLines(lines);
+        } else {
+            mCombo = -1;
+        }
+        if (point != null) {
+            point.clearedLines = lines;
+            recordLock(point);
+        }
+        clearFallingBrick();
+        // The next brick waits for gravity to move once.
+        mGravityCredit = 0;
+    }
+
+    private void startLockDelay() {
+        mLockFrames = LOCK_DELAY;
+        mLockResets = 0;
+        mLowestTop = mFallingTop;
+    }
+
+    /**
+     * Starts the lock delay over if the falling brick got lower than it has been, or if it was
+     * {@code isMoved} sideways or turned and has resets left.
+     */
+    private void updateLockDelay(boolean isMoved) {
+        if (mFallingTop > mLowestTop) {
+            startLockDelay();
+        } else if (isMoved && mLockResets < MAX_LOCK_RESETS) {
+            mLockFrames = LOCK_DELAY;
+            mLockResets++;
+        }
+    }
+
+    private void scoreLines(int lines) {
+        int multiplier = getLevel() + 1;
+        int score = LINE_SCORES[Math.min(lines, LINE_SCORES.length - 1)] * multiplier;
+        boolean isTetris = lines >= 4;
+        if (isTetris && mIsBackToBack) {
+            score += score / 2;
+        }
+        mIsBackToBack = isTetris;
+        mCombo++;
+        score += COMBO_SCORE * mCombo * multiplier;
+        mScore += score;
+        mLines += lines;
+        if (mListener != null) {
+            mListener.onLinesCleared(lines, mScore);
+        }
+    }
+
+    /**
+     * Applies a player input. Returns false if the input had no effect.
+     */
+    public boolean apply(Input input) {
+        if (mIsGameOver) {
+            return false;
+        }
+        switch (input) {
+            case LEFT:
+                updateFallingPoints();
+                return moveFallingPoints(-1);
+            case RIGHT:
+                updateFallingPoints();
+                return moveFallingPoints(1);
+            case ROTATE:
+                return rotateFallingPoints();
+            case SOFT_DROP:
+                step();
+                return true;
+            case HARD_DROP:
+                hardDrop();
+                return true;
+            case UNDO:
+                // Takes back the last brick that settled.
+                return rewind(getHistorySize() - 2);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Moves the falling brick straight down to its ghost and settles it there.
+     */
+    private void hardDrop() {
+        updateFallingPoints();
+        markFallingDirty();
+        mFallingTop = mGhostTop;
+        step();
+    }
+
+    /**
+     * Takes the next brick off the queue, refilling it when the preview would run short.
+     */
+    BrickType takeUpcomingBrick() {
+        BrickType type = mUpcomingBricks.poll();
+        mUpcomingBricks.fill(mRandom, PREVIEW_SIZE);
+        return type;
+    }
+
+    private boolean isOutSide() {
+        for (int i = 0; i < BrickType.SIZE && mFallingTop + i < 0; i++) {
+            if (mFallingRows[i] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int getFallingBottom() {
+        for (int i = BrickType.SIZE - 1; i >= 0; i--) {
+            if (mFallingRows[i] != 0) {
+                return mFallingTop + i;
+            }
+        }
+        return -1;
+    }
+
+    private void clearFallingBrick() {
+        mFallingRows = NO_ROWS;
+        mHasFallingBrick = false;
+    }
+
+    void updateFallingPoints() {
+        if (!mHasFallingBrick) {
+            setFallingBrick(takeUpcomingBrick(), 0, mSpawnX, -BrickType.SIZE);
+            startLockDelay();
+            mBrickCounts[mFallingType.ordinal()]++;
+            markFallingDirty();
+            if (mListener != null) {
+                mListener.onBrickSpawned(mFallingType);
+            }
+        }
+    }
+
+    private boolean moveFallingPoints(int dx) {
+        if (mBoard.collides(mFallingRows, mFallingX + dx, mFallingTop)) {
+            return false;
+        }
+        mFallingX += dx;
+        markFallingDirty();
+        updateGhost();
+        updateLockDelay(true);
+        return true;
+    }
+
+    /**
+     * Turns the falling brick clockwise to its next precomputed orientation, trying the kicks of
+     * its type in order. Returns false, leaving the brick untouched, if every placement would leave
+     * the board or overlap a settled box.
+     */
+    private boolean rotateFallingPoints() {
+        updateFallingPoints();
+        BrickType type = mFallingType;
+        int rotation = (mFallingRotation + 1) % BrickType.ROTATIONS;
+        long[] rows = type.rotations[rotation];
+        int[] kicks = type.kicks[mFallingRotation];
+        for (int k = 0; k < kicks.length; k += 2) {
+            int x = mFallingX + kicks[k];
+            int top = mFallingTop + kicks[k + 1];
+            if (!mBoard.collides(rows, x, top)) {
+                markFallingDirty();
+                mFallingRows = rows;
+                mFallingRotation = rotation;
+                mFallingX = x;
+                mFallingTop = top;
+                markFallingDirty();
+                updateGhost();
+                updateLockDelay(true);
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,59 @@
+package com.rose.tetris.engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free exchange of buffers between one producer thread and one consumer thread. The producer
+ * fills {@link #getBack()} and calls {@link #publish()}; the consumer calls {@link #acquire()} and
+ * always gets the most recently published buffer, which the producer will not touch again until
+ * the consumer acquires another one. Nothing is allocated or locked after construction.
+ */
+public final class TripleBuffer<T> {
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4;
+
+    private final Object[] mBuffers;
+    // Index of the buffer in the middle, plus FRESH if it was published after the last acquire().
+    private final AtomicInteger mMiddle = new AtomicInteger(1);
+    private int mBackIndex = 0;
+    private int mFrontIndex = 2;
+
+    public TripleBuffer(T first, T second, T third) {
+        mBuffers = new Object[]{first, second, third};
+    }
+
+    /**
+     * Producer side: the buffer to write the next frame into.
+     */
+    @SuppressWarnings("unchecked")
+    public T getBack() {
+        return (T) mBuffers[mBackIndex];
+    }
+
+    /**
+     * Producer side: which of the three buffers {@link #getBack()} is, for producers that keep
+     * track of what each buffer already holds.
+     */
+    public int getBackIndex() {
+        return mBackIndex;
+    }
+
+    /**
+     * Producer side: hands the back buffer over to the consumer and takes another one to write.
+     */
+    public void publish() {
+        mBackIndex = mMiddle.getAndSet(mBackIndex | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Consumer side: returns the most recently published buffer, or the one returned last time if
+     * nothing was published since.
+     */
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        if ((mMiddle.get() & FRESH) != 0) {
+            mFrontIndex = mMiddle.getAndSet(mFrontIndex) & INDEX_MASK;
+        }
+        return (T) mBuffers[mFrontIndex];
+    }
+}
@@ -0,0 +1,44 @@
+package com.rose.tetris.engine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class FlightRecorderTest {
+    private static final FlightEvent[] EVENTS = FlightEvent.values();
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void dump_keepsLastEventsInOrder() throws IOException {
+        FlightRecorder recorder = new FlightRecorder(64);
+        File file = mFolder.newFile("flight.rec");
+        for (int events : new int[]{0, 10, 1_000}) {
+            long first = recorder.getCount();
+            for (long i = first; i < first + events; i++) {
+                recorder.record(EVENTS[(int) (i % EVENTS.length)], i * 3, (int) i, -i * 7);
+            }
+            recorder.dump(file);
+
+            FlightRecordReader reader = new FlightRecordReader(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+            assertEquals(recorder.getCount(), reader.getTotalCount());
+            assertEquals(Math.min(recorder.getCount(), 64), reader.getCount());
+            for (long i = recorder.getCount() - reader.getCount(); i < recorder.getCount(); i++) {
+                assertTrue(reader.next());
+                assertEquals(EVENTS[(int) (i % EVENTS.length)], reader.getEvent());
+                assertEquals(i * 3, reader.getTick());
+                assertEquals(i & 0xFFFF, reader.getArg());
+                assertEquals(-i * 7, reader.getValue());
+            }
+            assertFalse(reader.next());
+        }
+    }
+}
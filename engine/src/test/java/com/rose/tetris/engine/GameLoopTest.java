@@ -0,0 +1,110 @@
+package com.rose.tetris.engine;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class GameLoopTest {
+    // Long enough that the loop never times out on its own while a test runs; every step it takes
+    // is the fake clock moving and wake() being called.
+    private static final long STEP_NANOS = TimeUnit.HOURS.toNanos(1);
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private static final class FakeClock implements Clock {
+        final AtomicLong mNow = new AtomicLong();
+        final CountDownLatch mFirstRead = new CountDownLatch(1);
+
+        @Override
+        public long nanoTime() {
+            long now = mNow.get();
+            mFirstRead.countDown();
+            return now;
+        }
+    }
+
+    private final FakeClock mClock = new FakeClock();
+    private final Histogram mLateness = new Histogram();
+    private final GameLoop mLoop = new GameLoop(mClock, mLateness);
+    private final BlockingQueue<Integer> mCalls = new LinkedBlockingQueue<>();
+    private volatile int mStepsUntilWork = 1;
+
+    @After
+    public void tearDown() {
+        mLoop.release();
+    }
+
+    @Test
+    public void run_catchesUpAtMostMaxStepsAndDropsTheRest() throws InterruptedException {
+        start();
+
+        assertEquals(2, advance(STEP_NANOS * 5 / 2));
+        assertEquals(1, mLateness.getCount());
+        assertEquals(STEP_NANOS * 3 / 2, mLateness.getMax());
+
+        // Ten steps late: one step due plus MAX_CATCH_UP_STEPS, and the rest is not replayed.
+        assertEquals(1 + GameLoop.MAX_CATCH_UP_STEPS, advance(STEP_NANOS * 10));
+        assertEquals(2, mLateness.getCount());
+        assertEquals(STEP_NANOS * 19 / 2, mLateness.getMax());
+
+        assertEquals(1, advance(STEP_NANOS));
+        assertEquals(3, mLateness.getCount());
+    }
+
+    @Test
+    public void run_recordsLatenessOnlyWhenTaskHasWork() throws InterruptedException {
+        mStepsUntilWork = 3;
+        start();
+
+        assertEquals(1, advance(STEP_NANOS));
+        assertEquals(1, mLateness.getCount());
+        assertEquals(0, mLateness.getMax());
+
+        // The task asked for three steps, so waking it after one is not late.
+        assertEquals(1, advance(STEP_NANOS));
+        assertEquals(1, mLateness.getCount());
+
+        assertEquals(3, advance(STEP_NANOS * 3 + 1_000));
+        assertEquals(2, mLateness.getCount());
+        assertEquals(1_000, mLateness.getMax());
+    }
+
+    @Test
+    public void wake_runsTaskWithoutSteps() throws InterruptedException {
+        start();
+        mLoop.wake();
+        assertEquals(0, (int) mCalls.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, mLateness.getCount());
+    }
+
+    private void start() throws InterruptedException {
+        mLoop.start(STEP_NANOS, steps -> {
+            mCalls.add(steps);
+            return mStepsUntilWork;
+        });
+        // The loop measures from its first reading of the clock, so it must not miss an advance.
+        assertTrue(mClock.mFirstRead.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Moves the clock on by {@code nanos}, wakes the loop and returns how many steps it ran. The
+     * loop may notice the new time before the wake-up, which then runs the task with no steps.
+     */
+    private int advance(long nanos) throws InterruptedException {
+        mClock.mNow.addAndGet(nanos);
+        mLoop.wake();
+        while (true) {
+            Integer steps = mCalls.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertNotNull(steps);
+            if (steps != 0) {
+                return steps;
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.rose.tetris.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InputQueueTest {
+    private static final Input[] INPUTS = Input.values();
+
+    @Test
+    public void drain_keepsOrderAcrossWraparound() {
+        InputQueue queue = new InputQueue(4);
+        List<Long> drained = new ArrayList<>();
+        long next = 0;
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 3; i++, next++) {
+                assertTrue(queue.offer(INPUTS[(int) (next % INPUTS.length)], next));
+            }
+            drained.clear();
+            assertEquals(3, queue.drain((input, timestampNanos) -> {
+                assertEquals(INPUTS[(int) (timestampNanos % INPUTS.length)], input);
+                drained.add(timestampNanos);
+            }));
+            for (int i = 0; i < 3; i++) {
+                assertEquals(next - 3 + i, (long) drained.get(i));
+            }
+        }
+        assertEquals(0, queue.drain((input, timestampNanos) -> fail()));
+    }
+
+    @Test
+    public void offer_rejectsWhenFull() {
+        InputQueue queue = new InputQueue(3);
+        // Rounded up to 4.
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(Input.LEFT, i));
+        }
+        assertFalse(queue.offer(Input.RIGHT, 4));
+
+        List<Long> drained = new ArrayList<>();
+        assertEquals(4, queue.drain((input, timestampNanos) -> {
+            assertEquals(Input.LEFT, input);
+            drained.add(timestampNanos);
+        }));
+        assertEquals(3, (long) drained.get(3));
+        assertTrue(queue.offer(Input.RIGHT, 5));
+        assertEquals(1, queue.drain((input, timestampNanos) -> assertEquals(Input.RIGHT, input)));
+    }
+
+    @Test
+    public void drain_getsEveryInputOfSeveralProducersInTheirOrder() throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 10_000;
+        InputQueue queue = new InputQueue(64);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    // The timestamp carries who sent the input and its place among theirs.
+                    long timestampNanos = (long) producer * perProducer + i;
+                    while (!queue.offer(INPUTS[producer % INPUTS.length], timestampNanos)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+
+        long[] received = new long[producers];
+        long total = 0;
+        while (total < (long) producers * perProducer) {
+            total += queue.drain((input, timestampNanos) -> {
+                int producer = (int) (timestampNanos / perProducer);
+                assertEquals(INPUTS[producer % INPUTS.length], input);
+                assertEquals(received[producer], timestampNanos % perProducer);
+                received[producer]++;
+            });
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int p = 0; p < producers; p++) {
+            assertEquals(perProducer, received[p]);
+        }
+        assertEquals(0, queue.drain((input, timestampNanos) -> fail()));
+    }
+}
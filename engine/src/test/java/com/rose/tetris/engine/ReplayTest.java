@@ -0,0 +1,71 @@
+package com.rose.tetris.engine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ReplayTest {
+    private static final Input[] INPUTS = Input.values();
+
+    @Test
+    public void replay_endsInSameState() {
+        Random random = new Random(11);
+        for (int game = 0; game < 20; game++) {
+            TetrisEngine engine = new TetrisEngine(random.nextLong());
+            if (game % 2 == 1) {
+                engine.setHistoryCapacity(game);
+                engine.newGame(random.nextLong());
+            }
+            byte[] replay = record(engine, random, 20_000);
+
+            ReplayPlayer player = new ReplayPlayer(replay);
+            player.seek(Long.MAX_VALUE);
+            assertSameState(engine, player.getEngine());
+        }
+    }
+
+    @Test
+    public void seek_matchesPlayingForward() {
+        Random random = new Random(5);
+        TetrisEngine engine = new TetrisEngine(random.nextLong());
+        engine.setGravityCurve(new GravityCurve(40));
+        byte[] replay = record(engine, random, 50_000);
+
+        ReplayPlayer player = new ReplayPlayer(replay);
+        for (int i = 0; i < 50; i++) {
+            long tick = (long) (random.nextDouble() * player.getEndTick());
+            player.seek(tick);
+            ReplayPlayer reference = new ReplayPlayer(replay);
+            reference.seek(tick);
+            assertEquals(tick, player.getTick());
+            assertSameState(reference.getEngine(), player.getEngine());
+        }
+    }
+
+    private static byte[] record(TetrisEngine engine, Random random, int ticks) {
+        ReplayRecorder recorder = new ReplayRecorder();
+        recorder.start(engine);
+        for (int i = 0; i < ticks && !engine.isGameOver(); i++) {
+            while (random.nextInt(4) == 0) {
+                Input input = INPUTS[random.nextInt(INPUTS.length)];
+                recorder.record(engine.getTick(), input);
+                engine.apply(input);
+            }
+            engine.tick();
+        }
+        return recorder.toByteArray(engine.getTick());
+    }
+
+    private static void assertSameState(TetrisEngine expected, TetrisEngine actual) {
+        assertEquals(expected.getTick(), actual.getTick());
+        assertEquals(expected.getScore(), actual.getScore());
+        assertEquals(expected.isGameOver(), actual.isGameOver());
+        assertEquals(expected.getUpcomingBrick(), actual.getUpcomingBrick());
+        for (int y = -BrickType.SIZE; y < expected.getHeight(); y++) {
+            assertEquals(expected.getRow(y, 0), actual.getRow(y, 0));
+            assertEquals(expected.getFallingRow(y, 0), actual.getFallingRow(y, 0));
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package com.rose.tetris.engine;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TetrisEngineTest {
+    private static final int TICKS_PER_GAME = 2_000;
+    private static final Input[] INPUTS = Input.values();
+
+    @Test
+    public void tick_doesNotAllocate() {
+        TetrisEngine engine = new TetrisEngine(1);
+        engine.setGravityCurve(new GravityCurve(1));
+        assertPlaysWithoutAllocating(engine);
+    }
+
+    @Test
+    public void tick_doesNotAllocateWithHistory() {
+        TetrisEngine engine = new TetrisEngine(1);
+        engine.setGravityCurve(new GravityCurve(1));
+        engine.setHistoryCapacity(33);
+        engine.newGame(1);
+        assertPlaysWithoutAllocating(engine);
+    }
+
+    private static void assertPlaysWithoutAllocating(TetrisEngine engine) {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        Random random = new Random(42);
+
+        // Warm up so that class loading and JIT compilation do not count as allocations.
+        play(engine, random, 200_000);
+
+        // A compilation that finishes late can still allocate a few bytes on this thread, so only
+        // the quietest of several windows has to be free of allocations.
+        long leastAllocated = Long.MAX_VALUE;
+        for (int window = 0; window < 10 && leastAllocated != 0; window++) {
+            long before = threadMXBean.getThreadAllocatedBytes(threadId);
+            play(engine, random, 100_000);
+            long after = threadMXBean.getThreadAllocatedBytes(threadId);
+            leastAllocated = Math.min(leastAllocated, after - before);
+        }
+
+        assertEquals(0, leastAllocated);
+    }
+
+    @Test
+    public void sameSeed_playsSameGame() {
+        TetrisEngine first = new TetrisEngine(7);
+        TetrisEngine second = new TetrisEngine(0);
+        second.newGame(7);
+        Random firstInputs = new Random(3);
+        Random secondInputs = new Random(3);
+        for (int i = 0; i < 50_000; i++) {
+            play(first, firstInputs, 1);
+            play(second, secondInputs, 1);
+            assertEquals(first.getScore(), second.getScore());
+            assertEquals(first.getUpcomingBrick(), second.getUpcomingBrick());
+            for (int y = -BrickType.SIZE; y < first.getHeight(); y++) {
+                assertEquals(first.getRow(y, 0), second.getRow(y, 0));
+                assertEquals(first.getFallingRow(y, 0), second.getFallingRow(y, 0));
+            }
+        }
+    }
+
+    @Test
+    public void readState_continuesSameGame() {
+        TetrisEngine saved = new TetrisEngine(12, 20, 9);
+        Random savedInputs = new Random(4);
+        play(saved, savedInputs, 1_500);
+        ByteBuffer state = ByteBuffer.allocate(saved.getStateSize());
+        saved.writeState(state);
+        state.flip();
+
+        TetrisEngine restored = new TetrisEngine(12, 20, 0);
+        restored.readState(state);
+        Random restoredInputs = new Random(4);
+        play(new TetrisEngine(12, 20, 9), restoredInputs, 1_500);
+        for (int i = 0; i < 10_000; i++) {
+            play(saved, savedInputs, 1);
+            play(restored, restoredInputs, 1);
+            assertEquals(saved.getTick(), restored.getTick());
+            assertEquals(saved.getScore(), restored.getScore());
+            for (int y = -BrickType.SIZE; y < saved.getHeight(); y++) {
+                assertEquals(saved.getRow(y, 0), restored.getRow(y, 0));
+                assertEquals(saved.getFallingRow(y, 0), restored.getFallingRow(y, 0));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void readState_rejectsUnknownRotation() {
+        TetrisEngine engine = new TetrisEngine(12, 20, 9);
+        ByteBuffer state = ByteBuffer.allocate(engine.getStateSize());
+        engine.writeState(state);
+        // The rotation of the falling brick, after 4 ints, 3 longs, 7 ints and 3 bytes.
+        state.put(4 * 4 + 3 * 8 + 7 * 4 + 3, (byte) 4);
+        state.flip();
+        new TetrisEngine(12, 20, 0).readState(state);
+    }
+
+    @Test
+    public void bricks_comeInBagsOfEveryType() {
+        TetrisEngine engine = new TetrisEngine(5);
+        for (int bag = 0; bag < 1_000; bag++) {
+            int seen = 0;
+            for (int i = 0; i < BrickType.values().length; i++) {
+                seen |= 1 << engine.takeUpcomingBrick().ordinal();
+            }
+            assertEquals((1 << BrickType.values().length) - 1, seen);
+        }
+    }
+
+    @Test
+    public void backToBackTetrises_scoreBonusAndCombo() {
+        TetrisEngine engine = new TetrisEngine(10, 20, 1);
+        BitBoard board = engine.getBoard();
+        for (int y = 12; y < 20; y++) {
+            board.setRow(y, 0, board.getFullWord(0) & ~1L);
+        }
+        engine.placeFallingBrick(BrickType.STICK, -1, 0);
+        engine.apply(Input.HARD_DROP);
+        assertEquals(4, engine.getLines());
+        assertEquals(800, engine.getScore());
+
+        engine.placeFallingBrick(BrickType.STICK, -1, 0);
+        engine.apply(Input.HARD_DROP);
+        assertEquals(8, engine.getLines());
+        assertEquals(800 + 1200 + 50, engine.getScore());
+        for (int y = 0; y < 20; y++) {
+            assertEquals(0, engine.getRow(y, 0));
+        }
+    }
+
+    @Test
+    public void ghost_landsWhereDroppingRowByRowWould() {
+        Random random = new Random(8);
+        for (int width : new int[]{10, 70}) {
+            TetrisEngine engine = new TetrisEngine(width, 24, 3);
+            // Undo puts column tops back too.
+            engine.setHistoryCapacity(8);
+            engine.newGame(3);
+            for (int i = 0; i < 20_000; i++) {
+                play(engine, random, 1);
+                BitBoard board = engine.getBoard();
+                for (int x = 0; x < width; x++) {
+                    int top = 0;
+                    while (top < board.getHeight() && !board.isSet(x, top)) {
+                        top++;
+                    }
+                    assertEquals(top, board.getColumnTop(x));
+                }
+                int distance = 0;
+                while (distance < engine.getHeight() + BrickType.SIZE && fits(engine, distance + 1)) {
+                    distance++;
+                }
+                for (int y = -BrickType.SIZE; y < engine.getHeight(); y++) {
+                    for (int word = 0; word < engine.getWordCount(); word++) {
+                        assertEquals(engine.getFallingRow(y - distance, word), engine.getGhostRow(y, word));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void advance_matchesTickingEachFrame() {
+        Random random = new Random(13);
+        GravityCurve[] curves = {
+                GravityCurve.DEFAULT,
+                new GravityCurve(25),
+                new GravityCurve(new int[]{3, 7, GravityCurve.MAX_ROWS}, new int[]{2, 3, 1}),
+                new GravityCurve(new int[]{1, 1, 2}, new int[]{40, 3, 1})};
+        for (GravityCurve curve : curves) {
+            long seed = random.nextLong();
+            // Narrow enough for random play to clear lines and go up levels.
+            TetrisEngine ticked = new TetrisEngine(5, 16, seed);
+            TetrisEngine advanced = new TetrisEngine(5, 16, seed);
+            ticked.setGravityCurve(curve);
+            advanced.setGravityCurve(curve);
+            ByteBuffer tickedState = ByteBuffer.allocate(ticked.getStateSize());
+            ByteBuffer advancedState = ByteBuffer.allocate(advanced.getStateSize());
+            for (int i = 0; i < 5_000 && !ticked.isGameOver(); i++) {
+                Input input = INPUTS[random.nextInt(INPUTS.length)];
+                assertEquals(ticked.apply(input), advanced.apply(input));
+                int frames = random.nextInt(100);
+                boolean isChanged = false;
+                for (int frame = 0; frame < frames; frame++) {
+                    isChanged |= ticked.tick();
+                }
+                assertEquals(isChanged, advanced.advance(frames));
+
+                tickedState.clear();
+                advancedState.clear();
+                ticked.writeState(tickedState);
+                advanced.writeState(advancedState);
+                assertArrayEquals(tickedState.array(), advancedState.array());
+            }
+        }
+    }
+
+    @Test
+    public void lockDelay_runsOutWhileTurningForever() {
+        for (GravityCurve curve : new GravityCurve[]{new GravityCurve(25), new GravityCurve(1),
+                new GravityCurve(new int[]{GravityCurve.MAX_ROWS}, new int[]{1})}) {
+            TetrisEngine engine = new TetrisEngine(10, 20, 1);
+            engine.setGravityCurve(curve);
+            engine.placeFallingBrick(BrickType.STICK, 3, 20 - BrickType.SIZE);
+            // Every move or turn gives the delay back until the resets run out, and the brick can
+            // only reach a new lowest row so many times.
+            int limit = (20 + 1) * (TetrisEngine.MAX_LOCK_RESETS + 1) * TetrisEngine.LOCK_DELAY;
+            int ticks = 0;
+            while (engine.getBoard().getStackTop() == 20) {
+                engine.apply(ticks % 3 == 2 ? Input.LEFT : Input.ROTATE);
+                engine.tick();
+                assertTrue(++ticks < limit);
+            }
+        }
+    }
+
+    @Test
+    public void rewind_restoresEachLockPoint() {
+        Random random = new Random(21);
+        // Narrow enough for random play to clear lines often.
+        TetrisEngine engine = new TetrisEngine(5, 16, random.nextLong());
+        engine.setHistoryCapacity(8);
+        final boolean[] isLocked = new boolean[1];
+        engine.setListener(new TetrisEngine.Listener() {
+            @Override
+            public void onBrickLocked(BrickType type) {
+                isLocked[0] = true;
+            }
+
+            @Override
+            public void onLinesCleared(int lines, int score) {
+            }
+
+            @Override
+            public void onBrickSpawned(BrickType type) {
+            }
+
+            @Override
+            public void onGameOver() {
+            }
+        });
+        engine.newGame(random.nextLong());
+        List<long[]> lockPoints = new ArrayList<>();
+        lockPoints.add(describe(engine));
+        int size = 1;
+        for (int i = 0; i < 100_000; i++) {
+            // Each call settles at most one brick and spawns none after it.
+            for (int call = 0; call < 2; call++) {
+                isLocked[0] = false;
+                Input input = INPUTS[random.nextInt(INPUTS.length)];
+                if (call == 1) {
+                    engine.tick();
+                } else if (input != Input.UNDO) {
+                    engine.apply(input);
+                }
+                if (isLocked[0] && !engine.isGameOver()) {
+                    lockPoints.add(describe(engine));
+                    size = Math.min(size + 1, engine.getHistoryCapacity());
+                }
+            }
+            if (engine.isGameOver() || random.nextInt(200) == 0) {
+                assertEquals(size, engine.getHistorySize());
+                int index = random.nextInt(size);
+                assertTrue(engine.rewind(index));
+                lockPoints.subList(lockPoints.size() - size + index + 1, lockPoints.size()).clear();
+                size = index + 1;
+                assertArrayEquals(lockPoints.get(lockPoints.size() - 1), describe(engine));
+                assertFalse(engine.isGameOver());
+            }
+        }
+        assertFalse(engine.rewind(engine.getHistorySize()));
+    }
+
+    @Test
+    public void undo_replaysTheSameBricks() {
+        TetrisEngine engine = new TetrisEngine(4);
+        engine.setHistoryCapacity(4);
+        engine.newGame(4);
+        assertFalse(engine.apply(Input.UNDO));
+        engine.apply(Input.HARD_DROP);
+        long[] first = describe(engine);
+        BrickType next = engine.getUpcomingBrick();
+        engine.apply(Input.LEFT);
+        engine.apply(Input.HARD_DROP);
+        assertTrue(engine.apply(Input.UNDO));
+        assertArrayEquals(first, describe(engine));
+        assertEquals(next, engine.getUpcomingBrick());
+        assertEquals(2, engine.getHistorySize());
+    }
+
+    /**
+     * Returns the rows, score, lines, preview and brick counts of {@code engine}.
+     */
+    private static long[] describe(TetrisEngine engine) {
+        int rows = engine.getHeight() * engine.getWordCount();
+        BrickType[] types = BrickType.values();
+        long[] state = new long[rows + 2 + TetrisEngine.PREVIEW_SIZE + types.length];
+        int i = 0;
+        for (int y = 0; y < engine.getHeight(); y++) {
+            for (int word = 0; word < engine.getWordCount(); word++) {
+                state[i++] = engine.getRow(y, word);
+            }
+        }
+        state[i++] = engine.getScore();
+        state[i++] = engine.getLines();
+        for (int k = 0; k < TetrisEngine.PREVIEW_SIZE; k++) {
+            state[i++] = engine.getUpcomingBrick(k).ordinal();
+        }
+        for (BrickType type : types) {
+            state[i++] = engine.getBrickCount(type);
+        }
+        return state;
+    }
+
+    /**
+     * Returns true if the falling brick moved {@code distance} rows down stays on the board without
+     * overlapping a settled box.
+     */
+    private static boolean fits(TetrisEngine engine, int distance) {
+        for (int y = -BrickType.SIZE; y < engine.getHeight(); y++) {
+            for (int word = 0; word < engine.getWordCount(); word++) {
+                long falling = engine.getFallingRow(y, word);
+                if (falling != 0 && (y + distance >= engine.getHeight()
+                        || (engine.getRow(y + distance, word) & falling) != 0)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void play(TetrisEngine engine, Random random, int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            if (engine.isGameOver() || engine.getTick() >= TICKS_PER_GAME) {
+                engine.newGame(random.nextLong());
+            }
+            int input = random.nextInt(INPUTS.length + 1);
+            if (input < INPUTS.length) {
+                engine.apply(INPUTS[input]);
+            }
+            engine.tick();
+        }
+    }
+}
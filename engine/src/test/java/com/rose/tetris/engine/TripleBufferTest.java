@@ -0,0 +1,81 @@
+package com.rose.tetris.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TripleBufferTest {
+    @Test
+    public void acquire_returnsLatestFrameAndSkipsOlderOnes() {
+        TripleBuffer<long[]> buffer = new TripleBuffer<>(new long[1], new long[1], new long[1]);
+        for (long frame = 1; frame <= 3; frame++) {
+            buffer.getBack()[0] = frame;
+            buffer.publish();
+        }
+        assertEquals(3, buffer.acquire()[0]);
+
+        buffer.getBack()[0] = 4;
+        buffer.publish();
+        buffer.getBack()[0] = 5;
+        buffer.publish();
+        assertEquals(5, buffer.acquire()[0]);
+    }
+
+    @Test
+    public void acquire_keepsFrontUntilNextPublish() {
+        TripleBuffer<long[]> buffer = new TripleBuffer<>(new long[1], new long[1], new long[1]);
+        buffer.getBack()[0] = 1;
+        buffer.publish();
+        long[] front = buffer.acquire();
+        assertSame(front, buffer.acquire());
+
+        // The producer keeps writing without publishing; the front must not change under it.
+        for (int i = 0; i < 5; i++) {
+            assertNotSame(front, buffer.getBack());
+            buffer.getBack()[0] = 100 + i;
+        }
+        assertSame(front, buffer.acquire());
+        assertEquals(1, front[0]);
+    }
+
+    @Test
+    public void publish_neverHandsProducerTheFront() {
+        TripleBuffer<long[]> buffer = new TripleBuffer<>(new long[1], new long[1], new long[1]);
+        long[] front = buffer.acquire();
+        for (long frame = 1; frame <= 100; frame++) {
+            buffer.getBack()[0] = frame;
+            buffer.publish();
+            assertNotSame(front, buffer.getBack());
+            if (frame % 3 == 0) {
+                front = buffer.acquire();
+                assertEquals(frame, front[0]);
+                assertNotSame(front, buffer.getBack());
+            }
+        }
+    }
+
+    @Test
+    public void acquire_seesFramesInOrderAcrossThreads() throws InterruptedException {
+        final long frames = 200_000;
+        TripleBuffer<long[]> buffer = new TripleBuffer<>(new long[2], new long[2], new long[2]);
+        Thread producer = new Thread(() -> {
+            for (long frame = 1; frame <= frames; frame++) {
+                long[] back = buffer.getBack();
+                back[0] = frame;
+                back[1] = -frame;
+                buffer.publish();
+            }
+        });
+        producer.start();
+
+        long last = 0;
+        while (last < frames) {
+            long[] front = buffer.acquire();
+            assertTrue(front[0] >= last);
+            assertEquals(-front[0], front[1]);
+            last = front[0];
+        }
+        producer.join();
+        assertEquals(frames, buffer.acquire()[0]);
+    }
+}